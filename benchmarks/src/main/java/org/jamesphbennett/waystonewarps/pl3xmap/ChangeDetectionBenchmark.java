@@ -0,0 +1,90 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading the repository and detecting changed waystones,
+ * the work that replaced hashing every waystone on each periodic check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ChangeDetectionBenchmark {
+    @Param({"1000", "10000", "100000", "500000"})
+    public int warpCount;
+
+    @Param({"4"})
+    public int worldCount;
+
+    private WarpRepository repository;
+    private WarpSnapshot snapshot;
+    private WarpSnapshot changedSnapshot;
+    private WarpChangeDetector unchangedDetector;
+    private WarpChangeDetector changingDetector;
+    private boolean flip;
+
+    @Setup
+    public void setUp() {
+        List<SyntheticWarps.Spec> specs = SyntheticWarps.generate(warpCount, SyntheticWarps.worlds(worldCount), 42L);
+        List<Warp> warps = SyntheticWarps.toWarps(specs);
+
+        // Rename or re-lock one percent of the waystones
+        List<SyntheticWarps.Spec> changedSpecs = new ArrayList<>(specs);
+        for (int i = 0; i < changedSpecs.size(); i += 100) {
+            SyntheticWarps.Spec spec = changedSpecs.get(i);
+            changedSpecs.set(i, i % 200 == 0 ? spec.renamed(spec.name() + " II") : spec.toggledLock());
+        }
+
+        repository = SyntheticWarps.repository(() -> warps);
+        snapshot = WarpSnapshot.of(warps);
+        changedSnapshot = WarpSnapshot.of(SyntheticWarps.toWarps(changedSpecs));
+
+        unchangedDetector = new WarpChangeDetector();
+        unchangedDetector.reset(snapshot);
+        changingDetector = new WarpChangeDetector();
+        changingDetector.reset(snapshot);
+    }
+
+    @Benchmark
+    public WarpSnapshot captureSnapshot() {
+        return WarpSnapshot.capture(repository);
+    }
+
+    @Benchmark
+    public WarpChangeDetector resetBaseline() {
+        WarpChangeDetector detector = new WarpChangeDetector();
+        detector.reset(snapshot);
+        return detector;
+    }
+
+    @Benchmark
+    public WarpChangeSet detectUnchanged() {
+        return unchangedDetector.detect(snapshot);
+    }
+
+    @Benchmark
+    public WarpChangeSet detectOnePercentChanged() {
+        // Alternate so every call sees the same amount of change
+        flip = !flip;
+        return changingDetector.detect(flip ? changedSnapshot : snapshot);
+    }
+}
@@ -0,0 +1,141 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the marker refresh path below the Pl3xMap API boundary:
+ * snapshot, per-world planning with real markers and tooltips, and the
+ * atomic publish into the public and locked SnapshotLayer of every world.
+ * 
+ * Pl3xMap worlds are represented by their layers only, which is all the
+ * build and publish stages touch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class RefreshBenchmark {
+    @Param({"1000", "10000", "100000", "500000"})
+    public int warpCount;
+
+    @Param({"4"})
+    public int worldCount;
+
+    private List<UUID> worlds;
+    private Map<UUID, String> worldKeys;
+    private List<Warp> warps;
+    private List<Warp> changedWarps;
+    private List<UUID> changedIds;
+    private WaystoneMarkerFactory factory;
+
+    // Published state for the incremental and unchanged refreshes
+    private MarkerReconciler reconciler;
+    private Map<String, WaystoneLayers> layers;
+    private boolean flip;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        worlds = SyntheticWarps.worlds(worldCount);
+        worldKeys = new HashMap<>();
+        for (int i = 0; i < worlds.size(); i++) {
+            worldKeys.put(worlds.get(i), "world_" + i);
+        }
+
+        List<SyntheticWarps.Spec> specs = SyntheticWarps.generate(warpCount, worlds, 42L);
+        warps = SyntheticWarps.toWarps(specs);
+
+        // Rename or re-lock 0.1% of the waystones, at least one
+        List<SyntheticWarps.Spec> changedSpecs = new ArrayList<>(specs);
+        changedIds = new ArrayList<>();
+        for (int i = 0; i < changedSpecs.size(); i += 1000) {
+            SyntheticWarps.Spec spec = changedSpecs.get(i);
+            changedSpecs.set(i, i % 2000 == 0 ? spec.renamed(spec.name() + " II") : spec.toggledLock());
+            changedIds.add(spec.id());
+        }
+        changedWarps = SyntheticWarps.toWarps(changedSpecs);
+
+        OwnerNameCache ownerNames = new OwnerNameCache(SyntheticWarps.plugin(), ids -> { });
+        factory = new WaystoneMarkerFactory(SyntheticWarps.plugin(), 16, warpCount * 2, ownerNames);
+
+        reconciler = new MarkerReconciler();
+        layers = newLayers();
+        publishAll(reconciler, layers, WarpSnapshot.of(warps));
+    }
+
+    @Benchmark
+    public Map<String, WaystoneLayers> fullRefreshIntoEmptyLayers() {
+        Map<String, WaystoneLayers> fresh = newLayers();
+        publishAll(new MarkerReconciler(), fresh, WarpSnapshot.of(warps));
+        return fresh;
+    }
+
+    @Benchmark
+    public Map<String, WaystoneLayers> fullRefreshUnchanged() {
+        publishAll(reconciler, layers, WarpSnapshot.of(warps));
+        return layers;
+    }
+
+    @Benchmark
+    public Map<String, WaystoneLayers> incrementalRefresh() {
+        // Alternate so every call applies the same amount of change
+        flip = !flip;
+        WarpSnapshot current = WarpSnapshot.of(flip ? changedWarps : warps);
+
+        Map<UUID, List<Integer>> upserts = new HashMap<>();
+        for (UUID id : changedIds) {
+            int row = current.row(id);
+            upserts.computeIfAbsent(current.worldId(row), w -> new ArrayList<>()).add(row);
+        }
+        for (Map.Entry<UUID, List<Integer>> world : upserts.entrySet()) {
+            String worldKey = worldKeys.get(world.getKey());
+            int[] rows = world.getValue().stream().mapToInt(Integer::intValue).toArray();
+            LayerPlan plan = reconciler.planChanges(worldKey, current, rows, List.of(), builder(worldKey));
+            reconciler.commit(layers.get(worldKey), plan);
+        }
+        return layers;
+    }
+
+    private Map<String, WaystoneLayers> newLayers() {
+        Map<String, WaystoneLayers> fresh = new HashMap<>();
+        for (String worldKey : worldKeys.values()) {
+            fresh.put(worldKey, new WaystoneLayers(new SnapshotLayer("waystones", () -> "Waystones"),
+                    new SnapshotLayer("waystones_locked", () -> "Locked Waystones"), null, null, null,
+                    new WaystoneSpatialIndex(128)));
+        }
+        return fresh;
+    }
+
+    private void publishAll(MarkerReconciler target, Map<String, WaystoneLayers> targetLayers, WarpSnapshot snapshot) {
+        for (UUID worldId : worlds) {
+            String worldKey = worldKeys.get(worldId);
+            LayerPlan plan = target.plan(worldKey, snapshot, snapshot.rows(worldId), builder(worldKey));
+            target.commit(targetLayers.get(worldKey), plan);
+        }
+    }
+
+    private MarkerReconciler.MarkerBuilder builder(String worldKey) {
+        return (snapshot, row, fingerprint) ->
+                factory.createMarker(snapshot.id(row), fingerprint, snapshot.creationTime(row), worldKey);
+    }
+}
@@ -0,0 +1,464 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
+import net.pl3x.map.core.markers.marker.Icon;
+import net.pl3x.map.core.markers.marker.Marker;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Headless scale harness for the layer manager.
+ * 
+ * Runs the plugin's refresh machinery (layer manager, build pipeline and
+ * refresh coordinator) on a {@link SimulatedServer} against a
+ * {@link SimulatedMapPlatform}, with waystones that are randomly created,
+ * deleted, renamed, locked and moved between worlds while the server ticks.
+ * Most changes are reported through the coordinator like the change listener
+ * would; a few are left for the periodic safety net to find, which checks one
+ * world at a time like per-world intervals do. Mutations only start once the
+ * first full refresh has been published, and every tick sleeps briefly so the
+ * build stages on worker threads keep up with the simulated ticks. Afterwards
+ * the published marker ids of every world are compared with the repository,
+ * as are the positions in each world's spatial index, and no tooltip may
+ * still show the owner name placeholder. With the density heatmap enabled,
+ * every cell's count is compared with the repository as well.
+ * 
+ * Reports main-thread time per simulated tick and exits with status 1 if the
+ * marker set is wrong.
+ * 
+ * Usage: java -cp benchmarks.jar org.jamesphbennett.waystonewarps.pl3xmap.ScaleHarness
+ *        [warps=100000] [worlds=4] [ticks=6000] [ops=3] [seed=42] [show-locked=true] [verbose=false]
+ *        [tick-budget=5] [backoff-mspt=40] [tick-sleep=1] [heatmap=false]
+ */
+public final class ScaleHarness {
+    private static final int EVENT_FLUSH_TICKS = 5;
+    private static final int SAFETY_NET_TICKS = 400;
+    private static final int RELOAD_EVERY_TICKS = 3000;
+    private static final double UNREPORTED_CHANCE = 0.02;
+    private static final long TICK_BUDGET_NANOS = 50_000_000L;
+    private static final int DRAIN_LIMIT_TICKS = 100_000;
+    private static final int HEATMAP_CELL_SIZE = 256;
+
+    private final Map<String, String> options;
+    private final Random random;
+    private final Map<UUID, SyntheticWarps.Spec> specs = new LinkedHashMap<>();
+    private final Map<UUID, Warp> warps = new LinkedHashMap<>();
+    private final List<UUID> worldIds;
+    private final List<UUID> ids = new ArrayList<>();
+    private long nextId;
+
+    private ScaleHarness(Map<String, String> options) {
+        this.options = options;
+        this.random = new Random(longOption("seed", 42));
+        this.worldIds = SyntheticWarps.worlds(intOption("worlds", 4));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator > 0) {
+                options.put(arg.substring(0, separator), arg.substring(separator + 1));
+            }
+        }
+        System.exit(new ScaleHarness(options).run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+        int warpCount = intOption("warps", 100_000);
+        int ticks = intOption("ticks", 6000);
+        int opsPerTick = intOption("ops", 3);
+        long tickSleep = longOption("tick-sleep", 1);
+        boolean showLocked = Boolean.parseBoolean(options.getOrDefault("show-locked", "true"));
+        boolean heatmap = Boolean.parseBoolean(options.getOrDefault("heatmap", "false"));
+
+        SimulatedServer server = new SimulatedServer(Boolean.parseBoolean(options.getOrDefault("verbose", "false")));
+        File dataFolder = Files.createTempDirectory("waystones-harness").toFile();
+        dataFolder.deleteOnExit();
+
+        SimulatedMapPlatform platform = new SimulatedMapPlatform();
+        for (int i = 0; i < worldIds.size(); i++) {
+            platform.addWorld("world_" + i, worldIds.get(i));
+        }
+
+        for (SyntheticWarps.Spec spec : SyntheticWarps.generate(warpCount, worldIds, longOption("seed", 42))) {
+            put(spec);
+        }
+        nextId = warpCount;
+
+        WarpRepository repository = SyntheticWarps.repository(() -> new ArrayList<>(warps.values()));
+        Pl3xmapLayerManager layerManager = new Pl3xmapLayerManager(
+                server.createPlugin(dataFolder), platform, repository,
+                new Pl3xmapLayerManager.LayerSettings(20, 10, false),
+                showLocked ? new Pl3xmapLayerManager.LayerSettings(60, 11, false) : null,
+                16, warpCount * 2, null,
+                heatmap ? new Pl3xmapLayerManager.HeatmapSettings(HEATMAP_CELL_SIZE,
+                        new Pl3xmapLayerManager.LayerSettings(60, 9, false)) : null,
+                sliceSettings(), false);
+        RefreshCoordinator coordinator = new RefreshCoordinator(server.createPlugin(dataFolder), layerManager, 20);
+
+        System.out.printf(Locale.ROOT, "Scale harness: %d waystones in %d worlds, %d ticks, %d ops/tick%n",
+                warpCount, worldIds.size(), ticks, opsPerTick);
+
+        long[] tickNanos = new long[ticks];
+        Set<UUID> pendingWarpIds = new HashSet<>();
+        Set<UUID> pendingOwnerIds = new HashSet<>();
+        int reported = 0;
+        int unreported = 0;
+
+        long start = System.nanoTime();
+        long initStart = System.nanoTime();
+        layerManager.initialize();
+        // Incremental updates need a published baseline, so wait for the first full refresh
+        int initTicks = 0;
+        while (layerManager.getLastSnapshot() == null && initTicks++ < DRAIN_LIMIT_TICKS) {
+            server.tick();
+            Thread.sleep(1);
+        }
+        long initNanos = System.nanoTime() - initStart;
+        if (layerManager.getLastSnapshot() == null) {
+            System.out.println("RESULT: FAIL (initial refresh was never published)");
+            return false;
+        }
+
+        for (int tick = 0; tick < ticks; tick++) {
+            // Mutations are WaystoneWarps' work and not counted as main-thread time of the plugin
+            for (int op = 0; op < opsPerTick; op++) {
+                SyntheticWarps.Spec changed = mutate();
+                if (random.nextDouble() < UNREPORTED_CHANCE) {
+                    unreported++;
+                } else {
+                    pendingWarpIds.add(changed.id());
+                    pendingOwnerIds.add(changed.ownerId());
+                    reported++;
+                }
+            }
+
+            long pluginStart = System.nanoTime();
+            if (tick % EVENT_FLUSH_TICKS == 0 && (!pendingWarpIds.isEmpty() || !pendingOwnerIds.isEmpty())) {
+                coordinator.requestWarps(new HashSet<>(pendingWarpIds), new HashSet<>(pendingOwnerIds),
+                        RefreshMetrics.Source.EVENTS);
+                pendingWarpIds.clear();
+                pendingOwnerIds.clear();
+            }
+            if (tick > 0 && tick % SAFETY_NET_TICKS == 0) {
+                // Check one world at a time, like a per-world interval would
+                String world = "world_" + (tick / SAFETY_NET_TICKS) % worldIds.size();
+                coordinator.request(RefreshCoordinator.Kind.CHANGES, RefreshMetrics.Source.TIMER,
+                        WorldScope.only(Set.of(world)));
+            }
+            if (tick > 0 && tick % RELOAD_EVERY_TICKS == 0) {
+                platform.simulateReload();
+                layerManager.reattachLayers().thenAccept(complete -> {
+                    if (!complete) {
+                        coordinator.request(RefreshCoordinator.Kind.FULL, RefreshMetrics.Source.RELOAD_LISTENER);
+                    }
+                });
+            }
+            long pluginNanos = System.nanoTime() - pluginStart;
+
+            tickNanos[tick] = server.tick() + pluginNanos;
+            server.addMainThreadTime(pluginNanos);
+            if (tickSleep > 0) {
+                Thread.sleep(tickSleep);
+            }
+        }
+
+        // Let the safety net catch unreported changes, then wait until everything is published
+        long drainStart = System.nanoTime();
+        if (!pendingWarpIds.isEmpty() || !pendingOwnerIds.isEmpty()) {
+            coordinator.requestWarps(pendingWarpIds, pendingOwnerIds, RefreshMetrics.Source.EVENTS);
+        }
+        CompletableFuture<Void> done = coordinator.request(RefreshCoordinator.Kind.CHANGES, RefreshMetrics.Source.TIMER);
+        int drainTicks = 0;
+        while (!done.isDone() && drainTicks++ < DRAIN_LIMIT_TICKS) {
+            server.tick();
+            Thread.sleep(1);
+        }
+        // Owner names resolved during the drain trigger one more round of updates
+        for (int i = 0; i < 200; i++) {
+            server.tick();
+            Thread.sleep(1);
+        }
+        long drainNanos = System.nanoTime() - drainStart;
+        long totalNanos = System.nanoTime() - start;
+
+        boolean valid = done.isDone() && !done.isCompletedExceptionally()
+                && verify(platform, layerManager, repository, showLocked, heatmap);
+
+        report(tickNanos, initNanos, drainNanos, totalNanos, reported, unreported, layerManager, platform);
+        System.out.println(valid ? "RESULT: PASS" : "RESULT: FAIL");
+
+        layerManager.shutdown();
+        server.shutdown();
+        return valid;
+    }
+
+    /**
+     * Applies one random create, delete, rename, lock toggle or move to another world.
+     * 
+     * @return The waystone that was affected
+     */
+    private SyntheticWarps.Spec mutate() {
+        int action = random.nextInt(5);
+        if (action == 0 || ids.isEmpty()) {
+            UUID worldId = worldIds.get(random.nextInt(worldIds.size()));
+            SyntheticWarps.Spec template = specs.get(ids.get(random.nextInt(ids.size())));
+            SyntheticWarps.Spec spec = new SyntheticWarps.Spec(new UUID(0x4841524EL, nextId++), template.ownerId(),
+                    worldId, "New " + nextId, random.nextInt(40_000) - 20_000, 64, random.nextInt(40_000) - 20_000,
+                    random.nextBoolean(), template.creationTime());
+            put(spec);
+            return spec;
+        }
+
+        int index = random.nextInt(ids.size());
+        SyntheticWarps.Spec spec = specs.get(ids.get(index));
+        switch (action) {
+            case 1 -> {
+                // Swap-remove keeps deletion O(1)
+                UUID last = ids.remove(ids.size() - 1);
+                if (index < ids.size()) ids.set(index, last);
+                specs.remove(spec.id());
+                warps.remove(spec.id());
+                return spec;
+            }
+            case 2 -> {
+                SyntheticWarps.Spec renamed = spec.renamed(spec.name() + "'");
+                replace(renamed);
+                return renamed;
+            }
+            case 3 -> {
+                SyntheticWarps.Spec toggled = spec.toggledLock();
+                replace(toggled);
+                return toggled;
+            }
+            default -> {
+                UUID worldId = worldIds.get(random.nextInt(worldIds.size()));
+                SyntheticWarps.Spec moved = spec.movedToWorld(worldId);
+                replace(moved);
+                return moved;
+            }
+        }
+    }
+
+    private void put(SyntheticWarps.Spec spec) {
+        specs.put(spec.id(), spec);
+        warps.put(spec.id(), spec.toWarp());
+        ids.add(spec.id());
+    }
+
+    private void replace(SyntheticWarps.Spec spec) {
+        specs.put(spec.id(), spec);
+        warps.put(spec.id(), spec.toWarp());
+    }
+
+    /**
+     * Compares the published markers of every world with the waystones the repository holds.
+     */
+    private boolean verify(SimulatedMapPlatform platform, Pl3xmapLayerManager layerManager,
+                           WarpRepository repository, boolean showLocked, boolean heatmap) {
+        boolean valid = true;
+
+        // Expected markers per world, straight from the repository
+        Map<UUID, Map<String, Warp>> expectedByWorld = new HashMap<>();
+        for (Warp warp : repository.getAll()) {
+            if (showLocked || !warp.isLocked()) {
+                expectedByWorld.computeIfAbsent(warp.getWorldId(), id -> new HashMap<>())
+                        .put(WaystoneMarkerFactory.markerKey(warp.getId()), warp);
+            }
+        }
+
+        Set<UUID> checkedWorlds = new HashSet<>();
+        for (SimulatedMapPlatform.SimulatedWorld world : platform.getSimulatedWorlds()) {
+            checkedWorlds.add(world.getBukkitWorldId());
+            Map<String, Warp> expected = expectedByWorld.getOrDefault(world.getBukkitWorldId(), Map.of());
+
+            List<Marker<?>> markers = new ArrayList<>();
+            List<Boolean> inLockedLayer = new ArrayList<>();
+            boolean registered = true;
+            for (String layerKey : showLocked ? List.of("waystones", "waystones_locked") : List.of("waystones")) {
+                if (world.getLayer(layerKey) instanceof SnapshotLayer snapshotLayer) {
+                    for (Marker<?> marker : snapshotLayer.getMarkers()) {
+                        markers.add(marker);
+                        inLockedLayer.add(layerKey.equals("waystones_locked"));
+                    }
+                } else {
+                    System.out.println("FAIL " + world.getName() + ": layer " + layerKey + " is not registered");
+                    registered = false;
+                }
+            }
+            if (!registered) {
+                valid = false;
+                continue;
+            }
+
+            List<String> problems = new ArrayList<>();
+            Set<String> seen = new HashSet<>();
+            for (int i = 0; i < markers.size(); i++) {
+                Marker<?> marker = markers.get(i);
+                String key = marker.getKey();
+                Warp warp = expected.get(key);
+                if (!seen.add(key)) {
+                    problems.add("duplicate marker " + key);
+                } else if (warp == null) {
+                    problems.add("unexpected marker " + key);
+                } else if (inLockedLayer.get(i) != warp.isLocked()) {
+                    problems.add("wrong layer for " + key);
+                } else if (!(marker instanceof Icon icon)) {
+                    problems.add("not an icon " + key);
+                } else if (icon.getImage().contains("locked") != warp.isLocked()) {
+                    problems.add("wrong lock icon for " + key);
+                } else if ((int) icon.getPoint().x() != warp.getPosition().getX()
+                        || (int) icon.getPoint().z() != warp.getPosition().getZ()) {
+                    problems.add("wrong position for " + key);
+                } else if (icon.getOptions() != null && icon.getOptions().getTooltip() != null
+                        && icon.getOptions().getTooltip().getContent().contains(OwnerNameCache.PLACEHOLDER_NAME)) {
+                    problems.add("owner name placeholder for " + key);
+                }
+            }
+            for (String key : expected.keySet()) {
+                if (!seen.contains(key)) {
+                    problems.add("missing marker " + key);
+                }
+            }
+            verifySpatialIndex(layerManager.getSpatialIndex(world.getName()), expected.values(), problems);
+
+            if (heatmap) {
+                verifyHeatmap(world, expected.values(), problems);
+            }
+
+            if (problems.isEmpty()) {
+                System.out.printf(Locale.ROOT, "OK   %s: %d markers%n", world.getName(), seen.size());
+            } else {
+                valid = false;
+                System.out.printf(Locale.ROOT, "FAIL %s: %d problem(s), e.g. %s%n", world.getName(), problems.size(),
+                        problems.subList(0, Math.min(5, problems.size())));
+            }
+        }
+
+        for (Map.Entry<UUID, Map<String, Warp>> world : expectedByWorld.entrySet()) {
+            if (!checkedWorlds.contains(world.getKey())) {
+                valid = false;
+                System.out.printf(Locale.ROOT, "FAIL world %s: %d waystone(s) in a world without a map%n",
+                        world.getKey(), world.getValue().size());
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Compares a world's spatial index with the waystones expected in it.
+     */
+    private static void verifySpatialIndex(WaystoneSpatialIndex index, Collection<Warp> expected,
+                                           List<String> problems) {
+        if (index == null) {
+            problems.add("no spatial index");
+            return;
+        }
+        if (index.size() != expected.size()) {
+            problems.add("spatial index holds " + index.size() + " waystone(s), expected " + expected.size());
+        }
+        for (Warp warp : expected) {
+            WaystoneSpatialIndex.Entry entry = index.get(warp.getId());
+            if (entry == null || entry.x() != warp.getPosition().getX() || entry.z() != warp.getPosition().getZ()) {
+                problems.add("wrong spatial index entry for " + warp.getId());
+            }
+        }
+    }
+
+    /**
+     * Compares the density layer's cell counts with the waystones expected in a world.
+     */
+    private static void verifyHeatmap(SimulatedMapPlatform.SimulatedWorld world, Collection<Warp> expected,
+                                      List<String> problems) {
+        if (!(world.getLayer("waystones_density") instanceof SnapshotLayer layer)) {
+            problems.add("density layer is not registered");
+            return;
+        }
+
+        Map<String, Integer> counts = new HashMap<>();
+        for (Warp warp : expected) {
+            long cell = ((long) Math.floorDiv(warp.getPosition().getX(), HEATMAP_CELL_SIZE) << 32)
+                    | (Math.floorDiv(warp.getPosition().getZ(), HEATMAP_CELL_SIZE) & 0xffffffffL);
+            counts.merge("waystone_density_" + Long.toHexString(cell), 1, Integer::sum);
+        }
+
+        Set<String> seen = new HashSet<>();
+        for (Marker<?> marker : layer.getMarkers()) {
+            String key = marker.getKey();
+            seen.add(key);
+            Integer count = counts.get(key);
+            String tooltip = marker.getOptions().getTooltip().getContent();
+            if (count == null || !tooltip.startsWith(count + " ")) {
+                problems.add("wrong density cell " + key + " (" + tooltip + ", expected " + count + ")");
+            }
+        }
+        for (String key : counts.keySet()) {
+            if (!seen.contains(key)) {
+                problems.add("missing density cell " + key);
+            }
+        }
+    }
+
+    private void report(long[] tickNanos, long initNanos, long drainNanos, long totalNanos, int reported,
+                        int unreported, Pl3xmapLayerManager layerManager, SimulatedMapPlatform platform) {
+        long[] sorted = tickNanos.clone();
+        Arrays.sort(sorted);
+        long overBudget = Arrays.stream(tickNanos).filter(nanos -> nanos > TICK_BUDGET_NANOS).count();
+        long sum = Arrays.stream(tickNanos).sum();
+
+        System.out.printf(Locale.ROOT, "Waystones: %d final, %d changes reported, %d unreported%n",
+                specs.size(), reported, unreported);
+        System.out.printf(Locale.ROOT, "Initialize: %.2f ms, drain: %.1f ms, total: %.1f s%n",
+                initNanos / 1e6, drainNanos / 1e6, totalNanos / 1e9);
+        System.out.printf(Locale.ROOT,
+                "Main thread per tick: avg %.3f ms, p50 %.3f ms, p95 %.3f ms, p99 %.3f ms, max %.3f ms, %d tick(s) over 50 ms%n",
+                sum / (double) tickNanos.length / 1e6, percentile(sorted, 0.50), percentile(sorted, 0.95),
+                percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6, overBudget);
+
+        RefreshMetrics metrics = layerManager.getMetrics();
+        for (RefreshMetrics.Phase phase : RefreshMetrics.Phase.values()) {
+            System.out.println("Phase " + phase.label() + ": " + metrics.getPhaseStats(phase));
+        }
+        System.out.printf(Locale.ROOT, "Pipeline runs: %d ok, %d failed; icons registered: %d%n",
+                metrics.getCompletedRuns(), metrics.getFailedRuns(), platform.getIconCount());
+        System.out.println("Tooltip cache: " + layerManager.getTooltipCache());
+    }
+
+    /**
+     * @return Time slicing as configured by tick-budget and backoff-mspt, or null if tick-budget is 0
+     */
+    private Pl3xmapLayerManager.SliceSettings sliceSettings() {
+        double budget = Double.parseDouble(options.getOrDefault("tick-budget", "5"));
+        double backoff = Double.parseDouble(options.getOrDefault("backoff-mspt", "40"));
+        return budget > 0 ? new Pl3xmapLayerManager.SliceSettings(budget, backoff) : null;
+    }
+
+    private static double percentile(long[] sorted, double quantile) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * quantile) - 1);
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private int intOption(String name, int fallback) {
+        return Integer.parseInt(options.getOrDefault(name, String.valueOf(fallback)));
+    }
+
+    private long longOption(String name, long fallback) {
+        return Long.parseLong(options.getOrDefault(name, String.valueOf(fallback)));
+    }
+}
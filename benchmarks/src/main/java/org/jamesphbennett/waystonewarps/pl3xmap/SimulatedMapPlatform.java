@@ -0,0 +1,121 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.image.IconImage;
+import net.pl3x.map.core.markers.layer.Layer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory {@link MapPlatform} with plain maps as world, layer and icon registries.
+ * 
+ * Supports simulating a Pl3xMap reload, which drops every registered layer and icon.
+ */
+public final class SimulatedMapPlatform implements MapPlatform {
+    private final List<SimulatedWorld> worlds = new ArrayList<>();
+    private final Map<String, IconImage> icons = new ConcurrentHashMap<>();
+
+    /**
+     * Adds a world to the map.
+     * 
+     * @param name World name
+     * @param bukkitWorldId UUID of the matching Bukkit world
+     * @return The added world
+     */
+    public SimulatedWorld addWorld(String name, UUID bukkitWorldId) {
+        SimulatedWorld world = new SimulatedWorld(name, bukkitWorldId);
+        worlds.add(world);
+        return world;
+    }
+
+    /**
+     * Drops all layers and icons, like Pl3xMap does on /map reload.
+     */
+    public void simulateReload() {
+        for (SimulatedWorld world : worlds) {
+            world.layers.clear();
+        }
+        icons.clear();
+    }
+
+    /**
+     * @return The simulated worlds
+     */
+    public List<SimulatedWorld> getSimulatedWorlds() {
+        return worlds;
+    }
+
+    /**
+     * @return Number of registered icons
+     */
+    public int getIconCount() {
+        return icons.size();
+    }
+
+    @Override
+    public Collection<MapWorld> getWorlds() {
+        return new ArrayList<>(worlds);
+    }
+
+    @Override
+    public boolean hasIcon(String key) {
+        return icons.containsKey(key);
+    }
+
+    @Override
+    public void registerIcon(IconImage image) {
+        if (icons.putIfAbsent(image.getKey(), image) != null) {
+            throw new IllegalStateException("Icon already registered: " + image.getKey());
+        }
+    }
+
+    @Override
+    public void unregisterIcon(String key) {
+        icons.remove(key);
+    }
+
+    /**
+     * A world with an in-memory layer registry.
+     */
+    public static final class SimulatedWorld implements MapWorld {
+        private final String name;
+        private final UUID bukkitWorldId;
+        private final Map<String, Layer> layers = new ConcurrentHashMap<>();
+
+        SimulatedWorld(String name, UUID bukkitWorldId) {
+            this.name = name;
+            this.bukkitWorldId = bukkitWorldId;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public UUID getBukkitWorldId() {
+            return bukkitWorldId;
+        }
+
+        @Override
+        public Layer getLayer(String key) {
+            return layers.get(key);
+        }
+
+        @Override
+        public void registerLayer(Layer layer) {
+            if (layers.putIfAbsent(layer.getKey(), layer) != null) {
+                throw new IllegalStateException("Layer already registered: " + layer.getKey());
+            }
+        }
+
+        @Override
+        public void unregisterLayer(String key) {
+            layers.remove(key);
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.OfflinePlayer;
+import org.bukkit.Server;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.lang.reflect.Proxy;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Headless, tick-driven stand-in for a Bukkit server.
+ * 
+ * Responsibilities:
+ * - Install a Server proxy as the Bukkit singleton
+ * - Treat the thread that calls {@link #tick()} as the main thread
+ * - Run sync tasks on their due tick and async tasks on virtual threads
+ * - Report main-thread time per tick and the average tick time to the plugin
+ * 
+ * Only the server methods the plugin uses are implemented; everything else
+ * returns a default value.
+ */
+public final class SimulatedServer {
+    private static final int TICK_HISTORY = 100;
+
+    private final Logger logger;
+    private final Server server;
+    private final BukkitScheduler scheduler;
+    private final PriorityQueue<ScheduledTask> queue = new PriorityQueue<>();
+    private final ExecutorService async = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicInteger taskIds = new AtomicInteger();
+    private final long[] recentTickNanos = new long[TICK_HISTORY];
+
+    private volatile Thread mainThread;
+    private long currentTick;
+    private long sequence;
+
+    /**
+     * Creates the simulated server and installs it as the Bukkit server.
+     * 
+     * @param verbose Whether plugin INFO logging is shown
+     */
+    public SimulatedServer(boolean verbose) {
+        this.logger = Logger.getLogger("SimulatedServer");
+        this.logger.setLevel(verbose ? Level.INFO : Level.WARNING);
+        this.mainThread = Thread.currentThread();
+        this.scheduler = createScheduler();
+        this.server = createServer();
+        Bukkit.setServer(server);
+    }
+
+    /**
+     * Creates an enabled plugin bound to this server.
+     * 
+     * @param dataFolder Folder returned as the plugin data folder
+     * @return A Plugin proxy
+     */
+    public Plugin createPlugin(File dataFolder) {
+        return (Plugin) Proxy.newProxyInstance(
+                Plugin.class.getClassLoader(),
+                new Class<?>[]{Plugin.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLogger" -> logger;
+                    case "getName" -> "WaystoneWarps-Pl3xMap";
+                    case "isEnabled" -> true;
+                    case "getServer" -> server;
+                    case "getDataFolder" -> dataFolder;
+                    case "getResource" -> SimulatedServer.class.getClassLoader().getResourceAsStream((String) args[0]);
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SimulatedPlugin";
+                    default -> null;
+                });
+    }
+
+    /**
+     * Runs one server tick: every sync task that is due, on the calling thread.
+     * 
+     * @return Nanoseconds spent running tasks
+     */
+    public long tick() {
+        mainThread = Thread.currentThread();
+        long start = System.nanoTime();
+
+        long tick;
+        synchronized (queue) {
+            tick = ++currentTick;
+        }
+        while (true) {
+            ScheduledTask task;
+            synchronized (queue) {
+                task = queue.peek();
+                if (task == null || task.dueTick > tick) break;
+                queue.poll();
+            }
+
+            if (task.cancelled) continue;
+            try {
+                task.runnable.run();
+            } catch (Exception e) {
+                logger.warning("Task " + task.id + " failed: " + e);
+            }
+            if (task.period > 0 && !task.cancelled) {
+                schedule(task, task.period);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        recordTick(elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Adds main-thread time spent outside {@link #tick()} to the tick that ran last.
+     * 
+     * @param nanos Time spent on the main thread
+     */
+    public void addMainThreadTime(long nanos) {
+        synchronized (recentTickNanos) {
+            recentTickNanos[(int) (currentTick % TICK_HISTORY)] += nanos;
+        }
+    }
+
+    /**
+     * @return The number of ticks run so far
+     */
+    public long getCurrentTick() {
+        synchronized (queue) {
+            return currentTick;
+        }
+    }
+
+    /**
+     * Stops the async executor.
+     */
+    public void shutdown() {
+        async.shutdownNow();
+    }
+
+    private void recordTick(long nanos) {
+        synchronized (recentTickNanos) {
+            recentTickNanos[(int) (currentTick % TICK_HISTORY)] = nanos;
+        }
+    }
+
+    private double averageTickMillis() {
+        synchronized (recentTickNanos) {
+            long total = 0;
+            for (long nanos : recentTickNanos) {
+                total += nanos;
+            }
+            return total / (double) TICK_HISTORY / 1_000_000.0;
+        }
+    }
+
+    private ScheduledTask schedule(Runnable runnable, long delay, long period) {
+        ScheduledTask task = new ScheduledTask(taskIds.incrementAndGet(), runnable, period);
+        schedule(task, delay);
+        return task;
+    }
+
+    private void schedule(ScheduledTask task, long delay) {
+        synchronized (queue) {
+            // Like Bukkit, a task scheduled now runs on the next tick at the earliest
+            task.dueTick = currentTick + Math.max(1, delay);
+            task.sequence = sequence++;
+            queue.add(task);
+        }
+    }
+
+    private BukkitTask runAsync(Runnable runnable) {
+        ScheduledTask task = new ScheduledTask(taskIds.incrementAndGet(), runnable, 0);
+        async.execute(() -> {
+            if (!task.cancelled) runnable.run();
+        });
+        return task.handle();
+    }
+
+    private BukkitScheduler createScheduler() {
+        return (BukkitScheduler) Proxy.newProxyInstance(
+                BukkitScheduler.class.getClassLoader(),
+                new Class<?>[]{BukkitScheduler.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "runTask" -> schedule((Runnable) args[1], 0, 0).handle();
+                    case "runTaskLater" -> schedule((Runnable) args[1], (long) args[2], 0).handle();
+                    case "runTaskTimer" -> schedule((Runnable) args[1], (long) args[2], Math.max(1, (long) args[3])).handle();
+                    case "runTaskAsynchronously" -> runAsync((Runnable) args[1]);
+                    case "runTaskLaterAsynchronously" -> {
+                        Runnable runnable = (Runnable) args[1];
+                        yield schedule(() -> runAsync(runnable), (long) args[2], 0).handle();
+                    }
+                    case "runTaskTimerAsynchronously" -> {
+                        Runnable runnable = (Runnable) args[1];
+                        yield schedule(() -> runAsync(runnable), (long) args[2], Math.max(1, (long) args[3])).handle();
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SimulatedScheduler";
+                    default -> throw new UnsupportedOperationException("Scheduler method not simulated: " + method.getName());
+                });
+    }
+
+    private Server createServer() {
+        return (Server) Proxy.newProxyInstance(
+                Server.class.getClassLoader(),
+                new Class<?>[]{Server.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLogger" -> logger;
+                    case "getName" -> "SimulatedServer";
+                    case "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "simulated";
+                    case "getScheduler" -> scheduler;
+                    case "isPrimaryThread" -> Thread.currentThread() == mainThread;
+                    case "getAverageTickTime" -> averageTickMillis();
+                    case "getTPS" -> new double[]{20.0, 20.0, 20.0};
+                    case "getOfflinePlayer" -> args[0] instanceof UUID id ? offlinePlayer(id) : null;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SimulatedServer";
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static OfflinePlayer offlinePlayer(UUID id) {
+        return (OfflinePlayer) Proxy.newProxyInstance(
+                OfflinePlayer.class.getClassLoader(),
+                new Class<?>[]{OfflinePlayer.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getName" -> "Player_" + id.toString().substring(0, 8);
+                    case "getUniqueId" -> id;
+                    case "hashCode" -> id.hashCode();
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SimulatedPlayer[" + id + "]";
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0f;
+        return null;
+    }
+
+    /**
+     * A sync task waiting in the queue.
+     */
+    private static final class ScheduledTask implements Comparable<ScheduledTask> {
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private volatile boolean cancelled;
+        private long dueTick;
+        private long sequence;
+
+        ScheduledTask(int id, Runnable runnable, long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.period = period;
+        }
+
+        @Override
+        public int compareTo(ScheduledTask other) {
+            int byTick = Long.compare(dueTick, other.dueTick);
+            return byTick != 0 ? byTick : Long.compare(sequence, other.sequence);
+        }
+
+        BukkitTask handle() {
+            return (BukkitTask) Proxy.newProxyInstance(
+                    BukkitTask.class.getClassLoader(),
+                    new Class<?>[]{BukkitTask.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "cancel" -> {
+                            cancelled = true;
+                            yield null;
+                        }
+                        case "isCancelled" -> cancelled;
+                        case "getTaskId" -> id;
+                        case "hashCode" -> id;
+                        case "equals" -> proxy == args[0];
+                        case "toString" -> "SimulatedTask[" + id + "]";
+                        default -> defaultValue(method.getReturnType());
+                    });
+        }
+    }
+}
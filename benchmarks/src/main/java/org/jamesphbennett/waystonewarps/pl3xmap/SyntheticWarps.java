@@ -0,0 +1,332 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.positioning.Position3D;
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Proxy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Synthetic waystone data and lightweight fakes for benchmarking.
+ * 
+ * Responsibilities:
+ * - Generate reproducible waystones spread over several worlds
+ * - Derive renamed, moved or re-locked copies of existing waystones
+ * - Provide a WarpRepository and a Plugin backed by dynamic proxies
+ * 
+ * Warps are created through WaystoneWarps' own constructor, resolved
+ * reflectively so the harness keeps working when its parameter list grows.
+ */
+public final class SyntheticWarps {
+    private static final int WORLD_RADIUS = 20_000;
+    private static final String[] NAME_PARTS = {
+            "Spawn", "Market", "Harbor", "Mine", "Farm", "Castle", "Village", "Portal",
+            "Tower", "Temple", "Outpost", "Base", "Shop", "Arena", "Bridge", "Lake"
+    };
+
+    private static volatile WarpConstructor warpConstructor;
+
+    private SyntheticWarps() {
+    }
+
+    /**
+     * Description of a synthetic waystone.
+     * 
+     * @param id Waystone id
+     * @param ownerId Owning player
+     * @param worldId World the waystone is in
+     * @param name Display name
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @param locked Whether the waystone is private
+     * @param creationTime Creation timestamp
+     */
+    public record Spec(UUID id, UUID ownerId, UUID worldId, String name, int x, int y, int z,
+                       boolean locked, Instant creationTime) {
+
+        public Spec renamed(String newName) {
+            return new Spec(id, ownerId, worldId, newName, x, y, z, locked, creationTime);
+        }
+
+        public Spec toggledLock() {
+            return new Spec(id, ownerId, worldId, name, x, y, z, !locked, creationTime);
+        }
+
+        public Spec movedToWorld(UUID newWorldId) {
+            return new Spec(id, ownerId, newWorldId, name, x, y, z, locked, creationTime);
+        }
+
+        public Spec movedTo(int newX, int newZ) {
+            return new Spec(id, ownerId, worldId, name, newX, y, newZ, locked, creationTime);
+        }
+
+        public Warp toWarp() {
+            return SyntheticWarps.create(this);
+        }
+    }
+
+    /**
+     * Generates waystones spread over several worlds.
+     * 
+     * Positions are clustered around a few towns per world, like on real
+     * servers, and about a quarter of the waystones are private.
+     * 
+     * @param count Number of waystones
+     * @param worlds World ids to spread the waystones over
+     * @param seed Seed for reproducible output
+     * @return The generated waystones
+     */
+    public static List<Spec> generate(int count, List<UUID> worlds, long seed) {
+        Random random = new Random(seed);
+        int owners = Math.max(1, count / 20);
+        List<UUID> ownerIds = new ArrayList<>(owners);
+        for (int i = 0; i < owners; i++) {
+            ownerIds.add(new UUID(seed, i));
+        }
+
+        int[][] towns = new int[16][2];
+        for (int[] town : towns) {
+            town[0] = random.nextInt(2 * WORLD_RADIUS) - WORLD_RADIUS;
+            town[1] = random.nextInt(2 * WORLD_RADIUS) - WORLD_RADIUS;
+        }
+
+        List<Spec> specs = new ArrayList<>(count);
+        Instant epoch = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < count; i++) {
+            int x;
+            int z;
+            if (random.nextInt(3) == 0) {
+                int[] town = towns[random.nextInt(towns.length)];
+                x = town[0] + (int) (random.nextGaussian() * 200);
+                z = town[1] + (int) (random.nextGaussian() * 200);
+            } else {
+                x = random.nextInt(2 * WORLD_RADIUS) - WORLD_RADIUS;
+                z = random.nextInt(2 * WORLD_RADIUS) - WORLD_RADIUS;
+            }
+
+            specs.add(new Spec(
+                    new UUID(~seed, i),
+                    ownerIds.get(random.nextInt(owners)),
+                    worlds.get(random.nextInt(worlds.size())),
+                    name(random, i),
+                    x, 40 + random.nextInt(200), z,
+                    random.nextInt(4) == 0,
+                    epoch.plusSeconds(random.nextInt(60 * 60 * 24 * 365))));
+        }
+        return specs;
+    }
+
+    /**
+     * Creates deterministic world ids.
+     * 
+     * @param count Number of worlds
+     * @return The world ids
+     */
+    public static List<UUID> worlds(int count) {
+        List<UUID> worlds = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            worlds.add(new UUID(0x5741595354L, i));
+        }
+        return worlds;
+    }
+
+    /**
+     * Creates warps for a list of specs.
+     * 
+     * @param specs Waystone descriptions
+     * @return Warps in the same order
+     */
+    public static List<Warp> toWarps(Collection<Spec> specs) {
+        List<Warp> warps = new ArrayList<>(specs.size());
+        for (Spec spec : specs) {
+            warps.add(create(spec));
+        }
+        return warps;
+    }
+
+    /**
+     * Creates a repository serving whatever the supplier currently returns.
+     * 
+     * @param warps Source of the repository contents
+     * @return A WarpRepository proxy; only the read methods are supported
+     */
+    public static WarpRepository repository(Supplier<? extends Collection<Warp>> warps) {
+        return (WarpRepository) Proxy.newProxyInstance(
+                WarpRepository.class.getClassLoader(),
+                new Class<?>[]{WarpRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getAll" -> List.class.isAssignableFrom(method.getReturnType())
+                            ? new ArrayList<>(warps.get())
+                            : new LinkedHashSet<>(warps.get());
+                    case "getById" -> {
+                        for (Warp warp : warps.get()) {
+                            if (warp.getId().equals(args[0])) yield warp;
+                        }
+                        yield null;
+                    }
+                    case "getByPlayer" -> {
+                        List<Warp> owned = new ArrayList<>();
+                        for (Warp warp : warps.get()) {
+                            if (args[0].equals(warp.getPlayerId())) owned.add(warp);
+                        }
+                        yield List.class.isAssignableFrom(method.getReturnType()) ? owned : new LinkedHashSet<>(owned);
+                    }
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "SyntheticWarpRepository";
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    /**
+     * Creates a disabled plugin that only provides a logger.
+     * 
+     * Being disabled keeps background work (such as owner name lookups) from
+     * being scheduled, so benchmarks measure only the code under test.
+     * 
+     * @return A Plugin proxy
+     */
+    public static Plugin plugin() {
+        Logger logger = Logger.getLogger("WaystoneWarps-Pl3xMap-Benchmarks");
+        logger.setLevel(Level.WARNING);
+
+        return (Plugin) Proxy.newProxyInstance(
+                Plugin.class.getClassLoader(),
+                new Class<?>[]{Plugin.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getLogger" -> logger;
+                    case "getName" -> "WaystoneWarps-Pl3xMap";
+                    case "isEnabled" -> false;
+                    case "hashCode" -> System.identityHashCode(proxy);
+                    case "equals" -> proxy == args[0];
+                    case "toString" -> "BenchmarkPlugin";
+                    default -> defaultValue(method.getReturnType());
+                });
+    }
+
+    private static String name(Random random, int index) {
+        String name = NAME_PARTS[random.nextInt(NAME_PARTS.length)] + " " + (index % 1000);
+        // Some names need escaping, like on real servers
+        return random.nextInt(10) == 0 ? name + " <&'\">" : name;
+    }
+
+    private static Warp create(Spec spec) {
+        WarpConstructor constructor = warpConstructor;
+        if (constructor == null) {
+            constructor = WarpConstructor.resolve(spec);
+            warpConstructor = constructor;
+        }
+        return constructor.create(spec);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) return false;
+        if (type == int.class) return 0;
+        if (type == long.class) return 0L;
+        if (type == double.class) return 0.0;
+        if (type == float.class) return 0f;
+        if (type == short.class) return (short) 0;
+        if (type == byte.class) return (byte) 0;
+        if (type == char.class) return '\0';
+        return null;
+    }
+
+    /**
+     * Warp constructor with a resolved mapping from spec fields to parameters.
+     * 
+     * @param constructor The public constructor with the most parameters
+     * @param uuidOrder Which spec UUID (0 = id, 1 = owner, 2 = world) fills each UUID parameter
+     */
+    private record WarpConstructor(Constructor<?> constructor, int[] uuidOrder) {
+        private static final int[][] UUID_ORDERS = {
+                {0, 1, 2}, {0, 2, 1}, {1, 0, 2}, {1, 2, 0}, {2, 0, 1}, {2, 1, 0}
+        };
+
+        static WarpConstructor resolve(Spec probe) {
+            Constructor<?> constructor = List.of(Warp.class.getConstructors()).stream()
+                    .filter(c -> !c.isSynthetic())
+                    .max(Comparator.comparingInt(Constructor::getParameterCount))
+                    .orElseThrow(() -> new IllegalStateException("Warp has no public constructor"));
+
+            // Parameter names are not reliable, so find the UUID order that round-trips
+            for (int[] order : UUID_ORDERS) {
+                WarpConstructor candidate = new WarpConstructor(constructor, order);
+                try {
+                    Warp warp = candidate.create(probe);
+                    if (probe.id().equals(warp.getId())
+                            && probe.ownerId().equals(warp.getPlayerId())
+                            && probe.worldId().equals(warp.getWorldId())) {
+                        return candidate;
+                    }
+                } catch (RuntimeException ignored) {
+                    // Try the next order
+                }
+            }
+            throw new IllegalStateException("Could not map synthetic data onto " + constructor);
+        }
+
+        Warp create(Spec spec) {
+            UUID[] uuids = {spec.id(), spec.ownerId(), spec.worldId()};
+            Class<?>[] types = constructor.getParameterTypes();
+            Object[] args = new Object[types.length];
+            int uuidIndex = 0;
+
+            for (int i = 0; i < types.length; i++) {
+                Class<?> type = types[i];
+                if (type == UUID.class) {
+                    args[i] = uuidIndex < uuidOrder.length ? uuids[uuidOrder[uuidIndex++]] : UUID.randomUUID();
+                } else if (type == String.class) {
+                    args[i] = spec.name();
+                } else if (type == Instant.class) {
+                    args[i] = spec.creationTime();
+                } else if (type == Position3D.class) {
+                    args[i] = position(spec.x(), spec.y(), spec.z());
+                } else if (type == boolean.class || type == Boolean.class) {
+                    args[i] = spec.locked();
+                } else if (type.isEnum()) {
+                    args[i] = type.getEnumConstants()[0];
+                } else {
+                    args[i] = defaultValue(type);
+                }
+            }
+
+            try {
+                return (Warp) constructor.newInstance(args);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Failed to create synthetic warp", e);
+            }
+        }
+
+        private static Position3D position(int x, int y, int z) {
+            for (Constructor<?> constructor : Position3D.class.getConstructors()) {
+                Class<?>[] types = constructor.getParameterTypes();
+                if (types.length != 3 || constructor.isSynthetic()) continue;
+                try {
+                    if (types[0] == int.class) {
+                        return (Position3D) constructor.newInstance(x, y, z);
+                    }
+                    if (types[0] == double.class) {
+                        return (Position3D) constructor.newInstance((double) x, (double) y, (double) z);
+                    }
+                } catch (ReflectiveOperationException e) {
+                    throw new IllegalStateException("Failed to create synthetic position", e);
+                }
+            }
+            throw new IllegalStateException("Position3D has no (x, y, z) constructor");
+        }
+    }
+}
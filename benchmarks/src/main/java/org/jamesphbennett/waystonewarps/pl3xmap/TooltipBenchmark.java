@@ -0,0 +1,101 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import net.pl3x.map.core.markers.marker.Marker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks tooltip rendering, HTML escaping and marker creation for a single waystone.
+ * 
+ * The chained-replace escaper is the implementation tooltips used before the
+ * single-pass escaper and is kept here as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TooltipBenchmark {
+    private static final int WARPS = 4096;
+
+    private List<Warp> warps;
+    private List<WarpFingerprint> fingerprints;
+    private TooltipTemplate template;
+    private WaystoneMarkerFactory cachedFactory;
+    private WaystoneMarkerFactory uncachedFactory;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        warps = SyntheticWarps.toWarps(SyntheticWarps.generate(WARPS, SyntheticWarps.worlds(4), 42L));
+        fingerprints = warps.stream().map(WarpFingerprint::of).toList();
+        template = new TooltipTemplate();
+
+        OwnerNameCache ownerNames = new OwnerNameCache(SyntheticWarps.plugin(), ids -> { });
+        cachedFactory = new WaystoneMarkerFactory(SyntheticWarps.plugin(), 16, WARPS, ownerNames);
+        uncachedFactory = new WaystoneMarkerFactory(SyntheticWarps.plugin(), 16, 0, ownerNames);
+
+        // Warm the cache so the cached benchmark measures hits only
+        for (int i = 0; i < WARPS; i++) {
+            createMarker(cachedFactory, i);
+        }
+    }
+
+    private Marker<?> createMarker(WaystoneMarkerFactory factory, int index) {
+        Warp warp = warps.get(index);
+        return factory.createMarker(warp.getId(), fingerprints.get(index), warp.getCreationTime(), "world");
+    }
+
+    private Warp nextWarp() {
+        next = (next + 1) & (WARPS - 1);
+        return warps.get(next);
+    }
+
+    @Benchmark
+    public String renderTooltip() {
+        Warp warp = nextWarp();
+        return template.renderWaystone(fingerprints.get(next), warp.getCreationTime(), "Steve", "world");
+    }
+
+    @Benchmark
+    public StringBuilder escapeHtmlSinglePass() {
+        StringBuilder out = new StringBuilder(64);
+        TooltipTemplate.escapeHtml(out, nextWarp().getName());
+        return out;
+    }
+
+    @Benchmark
+    public String escapeHtmlChainedReplace() {
+        return nextWarp().getName()
+                .replace("&", "&amp;")
+                .replace("<", "&lt;")
+                .replace(">", "&gt;")
+                .replace("\"", "&quot;")
+                .replace("'", "&#39;");
+    }
+
+    @Benchmark
+    public Marker<?> createMarkerCachedTooltip() {
+        nextWarp();
+        return createMarker(cachedFactory, next);
+    }
+
+    @Benchmark
+    public Marker<?> createMarkerUncachedTooltip() {
+        nextWarp();
+        return createMarker(uncachedFactory, next);
+    }
+}
@@ -0,0 +1,230 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.plugin.Plugin;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Validated values of config.yml.
+ * 
+ * Invalid values are replaced by their default with a warning, so a settings
+ * instance is always usable. Comparing two instances tells the config reload
+ * which parts of the integration need to be updated.
+ * 
+ * @param publicLayer Settings of the layer showing unlocked waystones
+ * @param lockedLayer Settings of the layer showing locked waystones, or null if they are hidden
+ * @param iconSize Size of waystone icons in pixels
+ * @param tooltipCacheSize Maximum number of cached tooltips (0 disables caching)
+ * @param clusterSettings Clustering of dense waystone areas, or null if disabled
+ * @param heatmapSettings Density heatmap layer, or null if disabled
+ * @param sliceSettings Time slicing of full refreshes, or null if disabled
+ * @param persistMarkers Whether the published markers are saved on shutdown
+ * @param refresh Periodic and event-driven refresh settings
+ * @param debounceMillis Window in which refresh requests are merged
+ * @param metricsFile Name of the Prometheus metrics file, or null if disabled
+ * @param metricsInterval Seconds between metrics file writes
+ */
+public record AddonSettings(Pl3xmapLayerManager.LayerSettings publicLayer,
+                            Pl3xmapLayerManager.LayerSettings lockedLayer,
+                            int iconSize,
+                            int tooltipCacheSize,
+                            Pl3xmapLayerManager.ClusterSettings clusterSettings,
+                            Pl3xmapLayerManager.HeatmapSettings heatmapSettings,
+                            Pl3xmapLayerManager.SliceSettings sliceSettings,
+                            boolean persistMarkers,
+                            RefreshSettings refresh,
+                            int debounceMillis,
+                            String metricsFile,
+                            int metricsInterval) {
+
+    /**
+     * Reads and validates the plugin's current configuration.
+     * 
+     * @param plugin The plugin whose configuration is read and which logs invalid values
+     * @return The validated settings
+     */
+    public static AddonSettings read(Plugin plugin) {
+        FileConfiguration config = plugin.getConfig();
+
+        boolean showLocked = config.getBoolean("display.show-locked-waystones", true);
+        Pl3xmapLayerManager.LayerSettings publicLayer = readLayerSettings(plugin, "public", 20, 10, false);
+        Pl3xmapLayerManager.LayerSettings lockedLayer = showLocked
+                ? readLayerSettings(plugin, "locked", 60, 11, false)
+                : null;
+
+        int iconSize = config.getInt("display.icon-size", 16);
+
+        // Validate icon size
+        if (iconSize <= 0 || iconSize > 128) {
+            plugin.getLogger().warning("Invalid icon size: " + iconSize + ", using default 16px");
+            iconSize = 16;
+        }
+
+        int tooltipCacheSize = config.getInt("cache.tooltip-size", 10000);
+
+        // Validate tooltip cache size
+        if (tooltipCacheSize < 0) {
+            plugin.getLogger().warning("Invalid tooltip cache size: " + tooltipCacheSize + ", using default 10000");
+            tooltipCacheSize = 10000;
+        }
+
+        // Read clustering settings
+        Pl3xmapLayerManager.ClusterSettings clusterSettings = null;
+        if (config.getBoolean("clustering.enabled", false)) {
+            // Configs written before cell-size call it radius
+            int clusterCellSize = config.getInt("clustering.cell-size", config.getInt("clustering.radius", 64));
+            int clusterMinSize = config.getInt("clustering.min-size", 5);
+
+            // Validate clustering settings
+            if (clusterCellSize <= 0) {
+                plugin.getLogger().warning("Invalid cluster cell-size: " + clusterCellSize + ", using default 64");
+                clusterCellSize = 64;
+            }
+            if (clusterMinSize < 2) {
+                plugin.getLogger().warning("Invalid cluster min-size: " + clusterMinSize + ", using default 5");
+                clusterMinSize = 5;
+            }
+            clusterSettings = new Pl3xmapLayerManager.ClusterSettings(clusterCellSize, clusterMinSize);
+        }
+
+        // Read density heatmap settings
+        Pl3xmapLayerManager.HeatmapSettings heatmapSettings = null;
+        if (config.getBoolean("display.layers.density.enabled", false)) {
+            int cellSize = config.getInt("display.layers.density.cell-size", 256);
+            if (cellSize <= 0) {
+                plugin.getLogger().warning("Invalid density cell size: " + cellSize + ", using default 256");
+                cellSize = 256;
+            }
+            heatmapSettings = new Pl3xmapLayerManager.HeatmapSettings(cellSize,
+                    readLayerSettings(plugin, "density", 60, 9, true));
+        }
+
+        // Read time slicing settings
+        Pl3xmapLayerManager.SliceSettings sliceSettings = null;
+        if (config.getBoolean("full-refresh.time-sliced", true)) {
+            double tickBudget = config.getDouble("full-refresh.tick-budget", 5);
+            double backoffMspt = config.getDouble("full-refresh.backoff-mspt", 40);
+
+            // Validate time slicing settings
+            if (tickBudget <= 0 || tickBudget > 50) {
+                plugin.getLogger().warning("Invalid full refresh tick budget: " + tickBudget + "ms, using default 5ms");
+                tickBudget = 5;
+            }
+            if (backoffMspt < 0) {
+                plugin.getLogger().warning("Invalid full refresh back-off: " + backoffMspt + "ms, using default 40ms");
+                backoffMspt = 40;
+            }
+            sliceSettings = new Pl3xmapLayerManager.SliceSettings(tickBudget, backoffMspt);
+        }
+
+        boolean persistMarkers = config.getBoolean("cache.marker-snapshot", true);
+
+        // Read refresh settings
+        boolean autoRefreshEnabled = config.getBoolean("auto-refresh.enabled", true);
+        boolean eventDriven = config.getBoolean("auto-refresh.event-driven", true);
+        int refreshInterval = eventDriven
+                ? config.getInt("auto-refresh.safety-net-interval", 900)
+                : config.getInt("auto-refresh.interval", 60);
+        RefreshSettings refresh = new RefreshSettings(autoRefreshEnabled, eventDriven, refreshInterval,
+                readWorldIntervals(plugin));
+
+        int debounceMillis = config.getInt("auto-refresh.debounce", 1000);
+        if (debounceMillis < 0) {
+            plugin.getLogger().warning("Invalid refresh debounce: " + debounceMillis + "ms, using default 1000ms");
+            debounceMillis = 1000;
+        }
+
+        // Read metrics settings
+        String metricsFile = null;
+        int metricsInterval = 60;
+        if (config.getBoolean("metrics.prometheus-file.enabled", false)) {
+            metricsFile = config.getString("metrics.prometheus-file.name", "metrics.prom");
+            metricsInterval = config.getInt("metrics.prometheus-file.interval", 60);
+            if (metricsInterval <= 0) {
+                plugin.getLogger().warning("Invalid metrics interval: " + metricsInterval + ", using default 60");
+                metricsInterval = 60;
+            }
+        }
+
+        return new AddonSettings(publicLayer, lockedLayer, iconSize, tooltipCacheSize, clusterSettings,
+                heatmapSettings, sliceSettings, persistMarkers, refresh, debounceMillis, metricsFile, metricsInterval);
+    }
+
+    /**
+     * @return true if locked waystones are shown on the map
+     */
+    public boolean showLocked() {
+        return lockedLayer != null;
+    }
+
+    /**
+     * Reads the settings of one waystone layer from the display.layers section.
+     * 
+     * @param plugin The plugin whose configuration is read
+     * @param name Name of the layer's section
+     * @param defaultInterval Update interval in seconds used when missing or invalid
+     * @param defaultPriority Priority used when missing
+     * @param defaultHidden Whether the layer starts hidden when missing
+     * @return The layer settings
+     */
+    private static Pl3xmapLayerManager.LayerSettings readLayerSettings(Plugin plugin, String name,
+                                                                       int defaultInterval, int defaultPriority,
+                                                                       boolean defaultHidden) {
+        FileConfiguration config = plugin.getConfig();
+        String path = "display.layers." + name + ".";
+        int updateInterval = config.getInt(path + "update-interval", defaultInterval);
+        if (updateInterval <= 0) {
+            plugin.getLogger().warning("Invalid " + name + " layer update interval: " + updateInterval
+                    + ", using default " + defaultInterval + "s");
+            updateInterval = defaultInterval;
+        }
+
+        return new Pl3xmapLayerManager.LayerSettings(updateInterval,
+                config.getInt(path + "priority", defaultPriority),
+                config.getBoolean(path + "default-hidden", defaultHidden));
+    }
+
+    /**
+     * Reads the per-world refresh intervals from the worlds section.
+     * 
+     * @param plugin The plugin whose configuration is read
+     * @return Interval in seconds by world name, for every world that sets one
+     */
+    private static Map<String, Integer> readWorldIntervals(Plugin plugin) {
+        ConfigurationSection worlds = plugin.getConfig().getConfigurationSection("worlds");
+        if (worlds == null) {
+            return Map.of();
+        }
+
+        Map<String, Integer> worldIntervals = new LinkedHashMap<>();
+
+        for (String worldName : worlds.getKeys(false)) {
+            if (!worlds.contains(worldName + ".interval")) continue;
+
+            int interval = worlds.getInt(worldName + ".interval");
+            if (interval < 0) {
+                plugin.getLogger().warning("Invalid refresh interval for world " + worldName + ": " + interval
+                        + ", using the default interval");
+                continue;
+            }
+            worldIntervals.put(worldName, interval);
+        }
+        return Collections.unmodifiableMap(worldIntervals);
+    }
+
+    /**
+     * Settings of the periodic change checks and event-driven updates.
+     * 
+     * @param enabled Whether waystones are refreshed automatically at all
+     * @param eventDriven Whether waystone events trigger targeted updates
+     * @param interval Seconds between periodic checks (0 = no periodic checks)
+     * @param worldIntervals Seconds between checks of worlds with their own interval, by world name
+     */
+    public record RefreshSettings(boolean enabled, boolean eventDriven, int interval,
+                                  Map<String, Integer> worldIntervals) {
+    }
+}
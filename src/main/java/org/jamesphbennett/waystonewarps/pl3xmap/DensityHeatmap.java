@@ -0,0 +1,181 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.Point;
+import net.pl3x.map.core.markers.marker.Marker;
+import net.pl3x.map.core.markers.option.Options;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Shows how many waystones are in each grid cell of one world as coloured squares.
+ * 
+ * Responsibilities:
+ * - Track which cell each waystone is in, fed by committed plans
+ * - Count a cell's waystones with a query on the world's shared spatial index
+ * - Draw one filled rectangle per occupied cell, coloured by its density level
+ * - Publish the rectangles to its own layer, which viewers can use instead of the icons
+ * 
+ * Cells are adjusted from the changes the reconciler commits, never by
+ * rescanning the world, and only cells whose count changed are redrawn.
+ * A zoomed-out map with tens of thousands of waystones then shows a few
+ * hundred rectangles instead of every icon.
+ * 
+ * Thread-safe: All methods are synchronized on the heatmap instance.
+ */
+public class DensityHeatmap {
+    private static final String CELL_KEY_PREFIX = "waystone_density_";
+
+    /**
+     * Fill colours (ARGB) by density level; level n holds cells with 2^n to 2^(n+1)-1 waystones.
+     */
+    private static final int[] LEVEL_COLORS = {
+            0x6066BB6A, 0x609CCC65, 0x60FFEE58, 0x60FFCA28, 0x60FFA726, 0x60FF7043, 0x60E53935, 0x60B71C1C
+    };
+    private static final int STROKE_WEIGHT = 1;
+
+    private final SnapshotLayer layer;
+    private final WaystoneSpatialIndex index;
+    private final int cellSize;
+    private final Map<UUID, Long> cellsById;
+    private final Set<UUID> lockedIds;
+    private final Map<String, Marker<?>> rectangles;
+
+    /**
+     * Creates an empty heatmap for one world.
+     * 
+     * @param layer Layer the cell rectangles are published to
+     * @param index Spatial index of the world's published waystones, updated before each apply
+     * @param cellSize Edge length of a grid cell in blocks
+     * @throws IllegalArgumentException if layer or index is null or cellSize is not positive
+     */
+    public DensityHeatmap(SnapshotLayer layer, WaystoneSpatialIndex index, int cellSize) {
+        if (layer == null) {
+            throw new IllegalArgumentException("Layer cannot be null");
+        }
+        if (index == null) {
+            throw new IllegalArgumentException("Spatial index cannot be null");
+        }
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Heatmap cell size must be positive");
+        }
+
+        this.layer = layer;
+        this.index = index;
+        this.cellSize = cellSize;
+        this.cellsById = new HashMap<>();
+        this.lockedIds = new HashSet<>();
+        this.rectangles = new LinkedHashMap<>();
+    }
+
+    /**
+     * Applies committed changes to the cell counts and republishes the layer if a cell changed.
+     * 
+     * @param upserts Published waystones that were added or changed, by warp id
+     * @param removals Ids of waystones that are no longer published
+     */
+    public synchronized void apply(Map<UUID, LayerPlan.PlannedMarker> upserts, Collection<UUID> removals) {
+        Set<Long> dirty = new HashSet<>();
+
+        for (UUID id : removals) {
+            Long previous = cellsById.remove(id);
+            if (previous != null) {
+                lockedIds.remove(id);
+                dirty.add(previous);
+            }
+        }
+
+        for (Map.Entry<UUID, LayerPlan.PlannedMarker> entry : upserts.entrySet()) {
+            UUID id = entry.getKey();
+            WarpFingerprint fingerprint = entry.getValue().fingerprint();
+            long cell = WaystoneSpatialIndex.cellKeyAt(fingerprint.x(), fingerprint.z(), cellSize);
+
+            Long previous = cellsById.put(id, cell);
+            if (previous != null) {
+                if (previous == cell && lockedIds.contains(id) == fingerprint.locked()) {
+                    // Renamed or re-owned in place, the counts are unchanged
+                    continue;
+                }
+                dirty.add(previous);
+            }
+
+            if (fingerprint.locked()) {
+                lockedIds.add(id);
+            } else {
+                lockedIds.remove(id);
+            }
+            dirty.add(cell);
+        }
+
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        for (long cell : dirty) {
+            render(cell);
+        }
+        layer.publish(rectangles.values());
+    }
+
+    /**
+     * Forgets all counts and removes the rectangles from the layer.
+     */
+    public synchronized void clear() {
+        cellsById.clear();
+        lockedIds.clear();
+        rectangles.clear();
+        layer.clear();
+    }
+
+    /**
+     * @return The layer the cell rectangles are published to
+     */
+    public SnapshotLayer getLayer() {
+        return layer;
+    }
+
+    /**
+     * Redraws one cell, or removes its rectangle if the cell became empty.
+     */
+    private void render(long cell) {
+        String key = CELL_KEY_PREFIX + Long.toHexString(cell);
+        List<WaystoneSpatialIndex.Entry> entries = index.queryCell(cell, cellSize);
+        if (entries.isEmpty()) {
+            rectangles.remove(key);
+            return;
+        }
+
+        int count = entries.size();
+        int locked = 0;
+        for (WaystoneSpatialIndex.Entry entry : entries) {
+            if (lockedIds.contains(entry.warpId())) {
+                locked++;
+            }
+        }
+        int color = LEVEL_COLORS[Math.min(LEVEL_COLORS.length - 1, 31 - Integer.numberOfLeadingZeros(count))];
+        int cellX = WaystoneSpatialIndex.cellX(cell);
+        int cellZ = WaystoneSpatialIndex.cellZ(cell);
+
+        Options options = Options.builder()
+                .fill(true)
+                .fillColor(color)
+                .stroke(true)
+                .strokeColor(color | 0xFF000000)
+                .strokeWeight(STROKE_WEIGHT)
+                .tooltipContent(count + (count == 1 ? " waystone" : " waystones")
+                        + (locked > 0 ? " (" + locked + " private)" : ""))
+                .build();
+
+        Marker<?> rectangle = Marker.rectangle(key,
+                Point.of(cellX * cellSize, cellZ * cellSize),
+                Point.of((cellX + 1) * cellSize, (cellZ + 1) * cellSize));
+        rectangle.setOptions(options);
+        rectangles.put(key, rectangle);
+    }
+}
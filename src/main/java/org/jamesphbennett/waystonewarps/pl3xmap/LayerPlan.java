@@ -0,0 +1,92 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.marker.Marker;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Fully built set of marker changes for one world, ready to be published.
+ * 
+ * Produced off the main thread by {@link MarkerReconciler} and applied to the
+ * world's layer in a single step on the main thread.
+ * 
+ * Immutable: Safe to hand from worker threads to the main thread.
+ */
+public final class LayerPlan {
+    private final String worldKey;
+    private final Map<UUID, PlannedMarker> upserts;
+    private final Set<UUID> removals;
+    private final int added;
+    private final int updated;
+
+    /**
+     * Creates a new layer plan.
+     * 
+     * @param worldKey Key of the world the plan belongs to
+     * @param upserts Markers to add or replace, keyed by warp id
+     * @param removals Ids of waystones whose markers should be removed
+     * @param added Number of upserts that are new markers
+     * @param updated Number of upserts that replace existing markers
+     */
+    public LayerPlan(String worldKey, Map<UUID, PlannedMarker> upserts, Set<UUID> removals, int added, int updated) {
+        this.worldKey = worldKey;
+        this.upserts = Collections.unmodifiableMap(upserts);
+        this.removals = Collections.unmodifiableSet(removals);
+        this.added = added;
+        this.updated = updated;
+    }
+
+    /**
+     * @return Key of the world the plan belongs to
+     */
+    public String getWorldKey() {
+        return worldKey;
+    }
+
+    /**
+     * @return Markers to add or replace, keyed by warp id
+     */
+    public Map<UUID, PlannedMarker> getUpserts() {
+        return upserts;
+    }
+
+    /**
+     * @return Ids of waystones whose markers should be removed
+     */
+    public Set<UUID> getRemovals() {
+        return removals;
+    }
+
+    /**
+     * @return Number of upserts that are new markers
+     */
+    public int getAdded() {
+        return added;
+    }
+
+    /**
+     * @return Number of upserts that replace existing markers
+     */
+    public int getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return true if publishing this plan would not change the layer
+     */
+    public boolean isEmpty() {
+        return upserts.isEmpty() && removals.isEmpty();
+    }
+
+    /**
+     * A built marker together with the fingerprint it was built from.
+     * 
+     * @param marker The marker to publish
+     * @param fingerprint Fingerprint of the waystone the marker represents
+     */
+    public record PlannedMarker(Marker<?> marker, WarpFingerprint fingerprint) {
+    }
+}
@@ -0,0 +1,143 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Command executor for /waystones-map.
+ * 
+ * Subcommands:
+ * - stats: show refresh timings, trigger counts, main-thread time and markers per world
+ * - reload: re-read config.yml and apply only the changed settings
+ * 
+ * Permissions: waystonewarps.pl3xmap.stats, waystonewarps.pl3xmap.reload
+ */
+public class MapCommand implements CommandExecutor {
+    private static final String PERMISSION_STATS = "waystonewarps.pl3xmap.stats";
+    private static final String PERMISSION_RELOAD = "waystonewarps.pl3xmap.reload";
+    private static final String MSG_NO_PERMISSION = "§cYou don't have permission to use this command.";
+    private static final String MSG_USAGE = "§eUsage: /waystones-map <stats|reload>";
+
+    private final WaystonePl3xmapAddon plugin;
+    private final Pl3xmapLayerManager layerManager;
+
+    /**
+     * Creates a new map command executor.
+     * 
+     * @param plugin The plugin whose configuration is reloaded
+     * @param layerManager The layer manager whose metrics are shown
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public MapCommand(WaystonePl3xmapAddon plugin, Pl3xmapLayerManager layerManager) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (layerManager == null) {
+            throw new IllegalArgumentException("Layer manager cannot be null");
+        }
+
+        this.plugin = plugin;
+        this.layerManager = layerManager;
+    }
+
+    /**
+     * Executes the map command.
+     * 
+     * @param sender The command sender
+     * @param command The command object
+     * @param label The command label used
+     * @param args Command arguments; the first one selects the subcommand
+     * @return true to indicate the command was handled
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (args.length == 0) {
+            sender.sendMessage(MSG_USAGE);
+            return true;
+        }
+
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "stats" -> showStats(sender);
+            case "reload" -> reloadConfig(sender);
+            default -> sender.sendMessage(MSG_USAGE);
+        }
+        return true;
+    }
+
+    /**
+     * Reloads config.yml and tells the sender what was applied.
+     * 
+     * @param sender The command sender
+     */
+    private void reloadConfig(CommandSender sender) {
+        if (!sender.hasPermission(PERMISSION_RELOAD)) {
+            sender.sendMessage(MSG_NO_PERMISSION);
+            return;
+        }
+
+        try {
+            List<String> changes = plugin.reloadSettings();
+            if (changes.isEmpty()) {
+                sender.sendMessage("§aConfiguration reloaded, nothing changed.");
+                return;
+            }
+            sender.sendMessage("§aConfiguration reloaded:");
+            for (String change : changes) {
+                sender.sendMessage("§7- §f" + change);
+            }
+        } catch (Exception e) {
+            sender.sendMessage("§cFailed to reload configuration: " + e.getMessage());
+            plugin.getLogger().severe("Error reloading configuration: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Sends the refresh metrics to the sender.
+     * 
+     * @param sender The command sender
+     */
+    private void showStats(CommandSender sender) {
+        if (!sender.hasPermission(PERMISSION_STATS)) {
+            sender.sendMessage(MSG_NO_PERMISSION);
+            return;
+        }
+
+        RefreshMetrics metrics = layerManager.getMetrics();
+
+        sender.sendMessage("§6Waystone map stats");
+
+        StringBuilder triggers = new StringBuilder("§eRefreshes triggered: §f");
+        for (RefreshMetrics.Source source : RefreshMetrics.Source.values()) {
+            if (source.ordinal() > 0) {
+                triggers.append(", ");
+            }
+            triggers.append(source.label().replace('_', ' ')).append(' ').append(metrics.getTriggers(source));
+        }
+        sender.sendMessage(triggers.toString());
+
+        long runs = metrics.getCompletedRuns();
+        double mainThreadMillis = metrics.getMainThreadNanos() / 1_000_000.0;
+        sender.sendMessage(String.format(Locale.ROOT,
+                "§ePipeline runs: §f%d ok, %d failed §7| §eMain thread: §f%.1fms total, %.2fms per run",
+                runs, metrics.getFailedRuns(), mainThreadMillis, runs == 0 ? 0 : mainThreadMillis / runs));
+
+        for (RefreshMetrics.Phase phase : RefreshMetrics.Phase.values()) {
+            sender.sendMessage("§e" + phase.label() + ": §f" + metrics.getPhaseStats(phase));
+        }
+
+        Map<String, Integer> markers = metrics.getMarkersByWorld();
+        if (markers.isEmpty()) {
+            sender.sendMessage("§eMarkers: §fnone published yet");
+        } else {
+            markers.forEach((world, count) -> sender.sendMessage("§eMarkers in " + world + ": §f" + count));
+        }
+
+        sender.sendMessage("§eTooltip cache: §f" + layerManager.getTooltipCache());
+    }
+}
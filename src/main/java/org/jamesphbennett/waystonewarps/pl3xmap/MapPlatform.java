@@ -0,0 +1,80 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.image.IconImage;
+import net.pl3x.map.core.markers.layer.Layer;
+
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * The parts of Pl3xMap and Bukkit the layer manager talks to.
+ * 
+ * Keeps the manager independent of the Pl3xMap singleton so it can be driven
+ * by lightweight fakes, e.g. in the scale harness. {@link Pl3xMapPlatform}
+ * is the implementation used on a server.
+ * 
+ * All methods are called on the main thread.
+ */
+public interface MapPlatform {
+
+    /**
+     * @return The worlds currently known to the map
+     */
+    Collection<MapWorld> getWorlds();
+
+    /**
+     * @param key Icon key
+     * @return Whether an icon with the key is registered
+     */
+    boolean hasIcon(String key);
+
+    /**
+     * Registers an icon image with the map.
+     * 
+     * @param image The icon to register
+     */
+    void registerIcon(IconImage image);
+
+    /**
+     * Removes an icon image from the map, so a replacement can be registered under its key.
+     * 
+     * @param key Icon key
+     */
+    void unregisterIcon(String key);
+
+    /**
+     * A world rendered by the map.
+     */
+    interface MapWorld {
+
+        /**
+         * @return Name of the world, used as its key throughout the plugin
+         */
+        String getName();
+
+        /**
+         * @return UUID of the matching Bukkit world, or null if it is not loaded
+         */
+        UUID getBukkitWorldId();
+
+        /**
+         * @param key Layer key
+         * @return The registered layer with the key, or null if there is none
+         */
+        Layer getLayer(String key);
+
+        /**
+         * Registers a layer in this world.
+         * 
+         * @param layer The layer to register
+         */
+        void registerLayer(Layer layer);
+
+        /**
+         * Removes a layer from this world.
+         * 
+         * @param key Key of the layer to remove
+         */
+        void unregisterLayer(String key);
+    }
+}
@@ -0,0 +1,179 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Staged pipeline that keeps marker building off the main thread.
+ * 
+ * Every refresh runs three stages:
+ * 1. Snapshot: read the raw data on the main thread (cheap)
+ * 2. Build: digest, diff and build markers and tooltips on virtual threads
+ * 3. Publish: apply the finished result to the layers on the main thread in one step
+ * 
+ * Runs are serialized: a run starts only after the previous one has published,
+ * so builds always diff against the state the layers actually show. A snapshot
+ * stage may spread its work over several ticks (see {@link TickSlicer}); the
+ * build only starts once it has finished.
+ * 
+ * Thread-safe: Runs may be submitted from any thread.
+ */
+public class MarkerBuildPipeline {
+    private final Plugin plugin;
+    private final RefreshMetrics metrics;
+    private final ExecutorService workers;
+    private CompletableFuture<?> tail;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a new build pipeline.
+     * 
+     * @param plugin The plugin instance for scheduling
+     * @param metrics Metrics receiving the main-thread time of every stage
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public MarkerBuildPipeline(Plugin plugin, RefreshMetrics metrics) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
+        }
+
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.workers = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("waystones-marker-builder-", 0).factory());
+        this.tail = CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Submits a refresh run to the pipeline.
+     * 
+     * @param snapshotStage Captures the input on the main thread
+     * @param buildStage Builds the result on a worker thread
+     * @param publishStage Publishes the result on the main thread
+     * @return Future completing with the built result once it was published
+     */
+    public <S, R> CompletableFuture<R> submit(Supplier<S> snapshotStage, Function<S, R> buildStage,
+                                              Consumer<R> publishStage) {
+        return submitDeferred(() -> CompletableFuture.completedFuture(snapshotStage.get()), buildStage, publishStage);
+    }
+
+    /**
+     * Submits a refresh run whose snapshot stage completes on a later tick.
+     * 
+     * @param snapshotStage Starts capturing the input on the main thread
+     * @param buildStage Builds the result on a worker thread
+     * @param publishStage Publishes the result on the main thread
+     * @return Future completing with the built result once it was published
+     */
+    public <S, R> CompletableFuture<R> submitDeferred(Supplier<CompletableFuture<S>> snapshotStage,
+                                                      Function<S, R> buildStage, Consumer<R> publishStage) {
+        if (shutdown) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Marker pipeline is shut down"));
+        }
+
+        CompletableFuture<R> run;
+        synchronized (this) {
+            // Chain onto the previous run regardless of how it ended
+            run = tail.handle((ignored, error) -> null)
+                    .thenCompose(ignored -> callOnMain(snapshotStage))
+                    .thenCompose(snapshot -> snapshot)
+                    .thenApplyAsync(buildStage, workers)
+                    .thenCompose(result -> callOnMain(() -> {
+                        publishStage.accept(result);
+                        return result;
+                    }));
+            tail = run;
+        }
+        return run;
+    }
+
+    /**
+     * Applies a function to every element in parallel on worker threads.
+     * Intended to fan out per-world work from within a build stage.
+     * 
+     * @param inputs Elements to process
+     * @param function Function to apply
+     * @return Results in the iteration order of the inputs
+     */
+    public <T, R> List<R> parallel(Collection<T> inputs, Function<T, R> function) {
+        List<CompletableFuture<R>> futures = new ArrayList<>(inputs.size());
+        for (T input : inputs) {
+            futures.add(CompletableFuture.supplyAsync(() -> function.apply(input), workers));
+        }
+
+        List<R> results = new ArrayList<>(futures.size());
+        for (CompletableFuture<R> future : futures) {
+            results.add(future.join());
+        }
+        return results;
+    }
+
+    /**
+     * Stops accepting runs and interrupts any build in progress.
+     */
+    public void shutdown() {
+        shutdown = true;
+        workers.shutdownNow();
+    }
+
+    /**
+     * @return true once the pipeline was shut down; runs failing after that were cut short by it
+     */
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /**
+     * Runs a stage on the main thread, inline if already on it.
+     */
+    private <T> CompletableFuture<T> callOnMain(Supplier<T> stage) {
+        if (Bukkit.isPrimaryThread()) {
+            try {
+                return CompletableFuture.completedFuture(timeOnMain(stage));
+            } catch (Exception e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (shutdown || !plugin.isEnabled()) {
+            future.completeExceptionally(new RejectedExecutionException("Plugin is disabled"));
+            return future;
+        }
+
+        plugin.getServer().getScheduler().runTask(plugin, () -> {
+            try {
+                future.complete(timeOnMain(stage));
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Runs a main-thread stage and accounts its duration as main-thread time.
+     */
+    private <T> T timeOnMain(Supplier<T> stage) {
+        long start = System.nanoTime();
+        try {
+            return stage.get();
+        } finally {
+            metrics.recordMainThread(System.nanoTime() - start);
+        }
+    }
+}
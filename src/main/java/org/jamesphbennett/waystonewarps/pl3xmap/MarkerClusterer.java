@@ -0,0 +1,183 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.marker.Marker;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Groups nearby waystones of one world into cluster markers.
+ * 
+ * Waystones are bucketed into square cells of the configured cell size. A cell
+ * holding at least the minimum cluster size is shown as one cluster marker at
+ * the members' centroid, and its members' own markers are folded away; smaller
+ * cells show their individual markers. Cell contents are queried from the
+ * world's shared {@link WaystoneSpatialIndex}, which already holds the committed
+ * positions. The clusterer never holds waystone markers: it tracks which marker
+ * keys are folded and filters them out when the layer's markers are composed.
+ * Only the cells touched by a committed plan are recomputed, so a single
+ * changed waystone re-renders at most two cells.
+ * 
+ * Thread-safe: All methods are synchronized on the clusterer instance.
+ */
+public class MarkerClusterer {
+    private static final int SUMMARY_NAME_LIMIT = 8;
+
+    private final WaystoneMarkerFactory markerFactory;
+    private final WaystoneSpatialIndex index;
+    private final int cellSize;
+    private final int minClusterSize;
+    private final Map<UUID, Member> members;
+    private final Map<Long, Marker<?>> clusters;
+    private final Set<String> foldedKeys;
+
+    /**
+     * Creates a new clusterer for one world.
+     * 
+     * @param markerFactory Factory used to create cluster markers
+     * @param index Spatial index of the world's published waystones, updated before each apply
+     * @param cellSize Edge length of a cluster cell in blocks
+     * @param minClusterSize Minimum number of waystones in a cell to form a cluster
+     * @throws IllegalArgumentException if markerFactory or index is null or a size is invalid
+     */
+    public MarkerClusterer(WaystoneMarkerFactory markerFactory, WaystoneSpatialIndex index, int cellSize,
+                           int minClusterSize) {
+        if (markerFactory == null) {
+            throw new IllegalArgumentException("Marker factory cannot be null");
+        }
+        if (index == null) {
+            throw new IllegalArgumentException("Spatial index cannot be null");
+        }
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cluster cell size must be positive");
+        }
+        if (minClusterSize < 2) {
+            throw new IllegalArgumentException("Minimum cluster size must be at least 2");
+        }
+
+        this.markerFactory = markerFactory;
+        this.index = index;
+        this.cellSize = cellSize;
+        this.minClusterSize = minClusterSize;
+        this.members = new HashMap<>();
+        this.clusters = new LinkedHashMap<>();
+        this.foldedKeys = new HashSet<>();
+    }
+
+    /**
+     * Applies a committed plan to the clusters and recomputes the affected cells.
+     * 
+     * @param plan The plan being committed to this clusterer's layer
+     */
+    public synchronized void apply(LayerPlan plan) {
+        Set<Long> dirty = new HashSet<>();
+
+        for (UUID id : plan.getRemovals()) {
+            Member previous = members.remove(id);
+            if (previous != null) {
+                foldedKeys.remove(WaystoneMarkerFactory.markerKey(id));
+                dirty.add(previous.cell());
+            }
+        }
+
+        for (Map.Entry<UUID, LayerPlan.PlannedMarker> entry : plan.getUpserts().entrySet()) {
+            WarpFingerprint fingerprint = entry.getValue().fingerprint();
+            long cell = WaystoneSpatialIndex.cellKeyAt(fingerprint.x(), fingerprint.z(), cellSize);
+
+            // A moved waystone also leaves its old cell
+            Member previous = members.put(entry.getKey(), new Member(fingerprint.name(), fingerprint.locked(), cell));
+            if (previous != null) {
+                foldedKeys.remove(WaystoneMarkerFactory.markerKey(entry.getKey()));
+                dirty.add(previous.cell());
+            }
+            dirty.add(cell);
+        }
+
+        for (long cell : dirty) {
+            render(cell);
+        }
+    }
+
+    /**
+     * Composes the markers a layer shows from its waystone markers:
+     * folded markers are left out and the cluster markers are added.
+     * 
+     * @param markers All waystone markers of the layer
+     * @return The markers to publish
+     */
+    public synchronized List<Marker<?>> compose(Collection<Marker<?>> markers) {
+        List<Marker<?>> composed = new ArrayList<>(markers.size() - foldedKeys.size() + clusters.size());
+        for (Marker<?> marker : markers) {
+            if (!foldedKeys.contains(marker.getKey())) {
+                composed.add(marker);
+            }
+        }
+        composed.addAll(clusters.values());
+        return composed;
+    }
+
+    /**
+     * Forgets all clusters.
+     */
+    public synchronized void clear() {
+        members.clear();
+        clusters.clear();
+        foldedKeys.clear();
+    }
+
+    /**
+     * Recomputes one cell as either a cluster or individual markers.
+     */
+    private void render(long cell) {
+        clusters.remove(cell);
+
+        // The index spans both layers, keep only this layer's members
+        List<WaystoneSpatialIndex.Entry> entries = new ArrayList<>();
+        for (WaystoneSpatialIndex.Entry entry : index.queryCell(cell, cellSize)) {
+            if (members.containsKey(entry.warpId())) {
+                entries.add(entry);
+            }
+        }
+
+        if (entries.size() < minClusterSize) {
+            for (WaystoneSpatialIndex.Entry entry : entries) {
+                foldedKeys.remove(WaystoneMarkerFactory.markerKey(entry.warpId()));
+            }
+            return;
+        }
+
+        long sumX = 0;
+        long sumZ = 0;
+        int locked = 0;
+        List<String> names = new ArrayList<>();
+
+        for (WaystoneSpatialIndex.Entry entry : entries) {
+            Member member = members.get(entry.warpId());
+            foldedKeys.add(WaystoneMarkerFactory.markerKey(entry.warpId()));
+            sumX += entry.x();
+            sumZ += entry.z();
+            if (member.locked()) {
+                locked++;
+            }
+            names.add(member.name());
+        }
+
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        List<String> sample = names.subList(0, Math.min(SUMMARY_NAME_LIMIT, names.size()));
+
+        int count = entries.size();
+        String clusterId = Long.toHexString(cell);
+        clusters.put(cell, markerFactory.createClusterMarker(
+                clusterId, (int) (sumX / count), (int) (sumZ / count), count, locked, new ArrayList<>(sample)));
+    }
+
+    private record Member(String name, boolean locked, long cell) {
+    }
+}
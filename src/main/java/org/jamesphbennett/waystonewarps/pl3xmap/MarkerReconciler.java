@@ -0,0 +1,402 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.marker.Marker;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies minimal marker changes to a layer instead of rebuilding it.
+ * 
+ * Keeps the fingerprint of every published waystone per world, keyed by warp
+ * id, and the markers of each of the world's layers keyed by marker key.
+ * Reconciliation is split in two steps: planning diffs the waystones against
+ * the published fingerprints and builds only new or changed markers (safe to
+ * run off the main thread), committing applies the changes to the markers of
+ * the world's public and locked layers and publishes each touched layer in one swap.
+ * The world's spatial index is updated from the same changes before the
+ * layers are, so clusters and the density heatmap query committed positions.
+ * 
+ * Thread-safe: Plans and commits of the same world are serialized on that world's state.
+ * Callers must not plan a world again before the previous plan was committed.
+ */
+public class MarkerReconciler {
+    private final ConcurrentHashMap<String, WorldState> worlds;
+
+    /**
+     * Creates a new reconciler with no published state.
+     */
+    public MarkerReconciler() {
+        this.worlds = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Plans a full reconciliation of a world against the waystones that should be visible in it.
+     * Published waystones missing from the collection are planned for removal.
+     * 
+     * @param worldKey Key of the world
+     * @param snapshot Snapshot holding the waystones
+     * @param rows Rows of the waystones that should be shown in the world's layer
+     * @param markerBuilder Builds the marker for a new or changed waystone
+     * @return The plan to commit
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public LayerPlan plan(String worldKey, WarpSnapshot snapshot, int[] rows, MarkerBuilder markerBuilder) {
+        if (worldKey == null || snapshot == null || rows == null || markerBuilder == null) {
+            throw new IllegalArgumentException("Plan parameters cannot be null");
+        }
+
+        WorldState state = state(worldKey);
+
+        synchronized (state) {
+            Map<UUID, WarpFingerprint> published = state.published;
+            Set<UUID> stale = new HashSet<>(published.keySet());
+            Map<UUID, LayerPlan.PlannedMarker> upserts = new HashMap<>();
+            int added = 0;
+            int updated = 0;
+
+            for (int row : rows) {
+                UUID id = snapshot.id(row);
+                stale.remove(id);
+
+                WarpFingerprint fingerprint = snapshot.fingerprint(row);
+                WarpFingerprint previous = published.get(id);
+
+                // Unchanged waystone, keep the existing marker
+                if (fingerprint.equals(previous)) {
+                    continue;
+                }
+
+                // Builder failed; keep any old marker and retry on the next pass
+                Marker<?> marker = markerBuilder.build(snapshot, row, fingerprint);
+                if (marker == null) {
+                    continue;
+                }
+
+                upserts.put(id, new LayerPlan.PlannedMarker(marker, fingerprint));
+                if (previous == null) {
+                    added++;
+                } else {
+                    updated++;
+                }
+            }
+
+            // Whatever is left was not seen in this pass and must disappear
+            return new LayerPlan(worldKey, upserts, stale, added, updated);
+        }
+    }
+
+    /**
+     * Plans a targeted change set without looking at the rest of the world.
+     * Upserted waystones are rebuilt only if their fingerprint changed.
+     * 
+     * @param worldKey Key of the world
+     * @param snapshot Snapshot holding the upserted waystones
+     * @param upserts Rows of waystones that were created or may have changed
+     * @param removals Ids of waystones that no longer belong in the layer
+     * @param markerBuilder Builds the marker for a new or changed waystone
+     * @return The plan to commit
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public LayerPlan planChanges(String worldKey, WarpSnapshot snapshot, int[] upserts, Collection<UUID> removals,
+                                 MarkerBuilder markerBuilder) {
+        if (worldKey == null || snapshot == null || upserts == null || removals == null || markerBuilder == null) {
+            throw new IllegalArgumentException("Plan parameters cannot be null");
+        }
+
+        WorldState state = state(worldKey);
+
+        synchronized (state) {
+            Map<UUID, WarpFingerprint> published = state.published;
+            Set<UUID> planRemovals = new HashSet<>();
+            for (UUID id : removals) {
+                if (published.containsKey(id)) {
+                    planRemovals.add(id);
+                }
+            }
+
+            Map<UUID, LayerPlan.PlannedMarker> planUpserts = new HashMap<>();
+            int added = 0;
+            int updated = 0;
+
+            for (int row : upserts) {
+                UUID id = snapshot.id(row);
+                WarpFingerprint fingerprint = snapshot.fingerprint(row);
+                WarpFingerprint previous = published.get(id);
+                if (fingerprint.equals(previous)) {
+                    continue;
+                }
+
+                Marker<?> marker = markerBuilder.build(snapshot, row, fingerprint);
+                if (marker == null) {
+                    continue;
+                }
+
+                planUpserts.put(id, new LayerPlan.PlannedMarker(marker, fingerprint));
+                if (previous == null) {
+                    added++;
+                } else {
+                    updated++;
+                }
+            }
+
+            return new LayerPlan(worldKey, planUpserts, planRemovals, added, updated);
+        }
+    }
+
+    /**
+     * Plans rebuilding the markers of already published waystones without diffing.
+     * Used when something outside the fingerprint changed, such as an owner name.
+     * Waystones that are not published in the world are ignored.
+     * 
+     * @param worldKey Key of the world
+     * @param snapshot Snapshot holding the waystones
+     * @param rows Rows of the waystones whose markers should be rebuilt
+     * @param markerBuilder Builds the replacement marker
+     * @return The plan to commit
+     */
+    public LayerPlan planPatch(String worldKey, WarpSnapshot snapshot, int[] rows, MarkerBuilder markerBuilder) {
+        WorldState state = state(worldKey);
+
+        synchronized (state) {
+            Map<UUID, WarpFingerprint> published = state.published;
+            Map<UUID, LayerPlan.PlannedMarker> upserts = new HashMap<>();
+            for (int row : rows) {
+                UUID id = snapshot.id(row);
+                WarpFingerprint fingerprint = published.get(id);
+                if (fingerprint == null) continue;
+
+                Marker<?> marker = markerBuilder.build(snapshot, row, snapshot.fingerprint(row));
+                if (marker != null) {
+                    upserts.put(id, new LayerPlan.PlannedMarker(marker, fingerprint));
+                }
+            }
+            return new LayerPlan(worldKey, upserts, Set.of(), 0, upserts.size());
+        }
+    }
+
+    /**
+     * Publishes a plan to a world's layers and records the new fingerprints.
+     * Each marker goes to the layer matching its lock state; a waystone whose
+     * lock state changed moves from one layer to the other. Only the plan's
+     * changes are applied to the markers kept for each layer, and only layers
+     * touched by the plan are published, each with a single array swap.
+     * 
+     * @param layers The layers of the plan's world
+     * @param plan The plan to publish
+     * @return Counts of added, updated and removed markers
+     * @throws IllegalArgumentException if layers or plan is null
+     */
+    public ReconcileResult commit(WaystoneLayers layers, LayerPlan plan) {
+        if (layers == null || plan == null) {
+            throw new IllegalArgumentException("Commit parameters cannot be null");
+        }
+
+        WorldState state = state(plan.getWorldKey());
+
+        synchronized (state) {
+            Map<UUID, WarpFingerprint> published = state.published;
+            LayerChanges publicChanges = new LayerChanges();
+            LayerChanges lockedChanges = new LayerChanges();
+
+            Set<UUID> removedIds = new HashSet<>();
+            for (UUID id : plan.getRemovals()) {
+                WarpFingerprint previous = published.remove(id);
+                if (previous != null) {
+                    (previous.locked() ? lockedChanges : publicChanges).removals.add(id);
+                    removedIds.add(id);
+                }
+            }
+
+            for (Map.Entry<UUID, LayerPlan.PlannedMarker> entry : plan.getUpserts().entrySet()) {
+                boolean locked = entry.getValue().fingerprint().locked();
+                WarpFingerprint previous = published.put(entry.getKey(), entry.getValue().fingerprint());
+
+                // Lock toggled, take it out of the other layer
+                if (previous != null && previous.locked() != locked) {
+                    (locked ? publicChanges : lockedChanges).removals.add(entry.getKey());
+                }
+                (locked ? lockedChanges : publicChanges).upserts.put(entry.getKey(), entry.getValue());
+            }
+
+            // Clusters and the heatmap query the index, so it moves first
+            WaystoneSpatialIndex index = layers.getSpatialIndex();
+            for (UUID id : removedIds) {
+                index.remove(id);
+            }
+            for (Map.Entry<UUID, LayerPlan.PlannedMarker> entry : plan.getUpserts().entrySet()) {
+                WarpFingerprint fingerprint = entry.getValue().fingerprint();
+                index.put(entry.getKey(), fingerprint.x(), fingerprint.z());
+            }
+
+            publicChanges.commit(plan.getWorldKey(), state.publicMarkers, layers.getLayer(false),
+                    layers.getClusterer(false));
+            lockedChanges.commit(plan.getWorldKey(), state.lockedMarkers, layers.getLayer(true),
+                    layers.getClusterer(true));
+
+            // The heatmap counts both layers, so it sees the plan's changes unsplit
+            if (layers.getHeatmap() != null && (!plan.getUpserts().isEmpty() || !removedIds.isEmpty())) {
+                layers.getHeatmap().apply(plan.getUpserts(), removedIds);
+            }
+            return new ReconcileResult(plan.getAdded(), plan.getUpdated(), removedIds.size(), published.size());
+        }
+    }
+
+    /**
+     * @param worldKey Key of the world
+     * @return true if at least one marker is published in the world
+     */
+    public boolean hasPublished(String worldKey) {
+        WorldState state = worlds.get(worldKey);
+        if (state == null) {
+            return false;
+        }
+
+        synchronized (state) {
+            return !state.published.isEmpty();
+        }
+    }
+
+    /**
+     * Returns everything published to a world, including markers that are
+     * currently folded into a cluster. The markers are looked up in the layer
+     * they belong to; the reconciler keeps no second reference to them.
+     * 
+     * @param worldKey Key of the world
+     * @return Published markers and their fingerprints, keyed by warp id
+     */
+    public Map<UUID, LayerPlan.PlannedMarker> getPublished(String worldKey) {
+        WorldState state = worlds.get(worldKey);
+        if (state == null) {
+            return Map.of();
+        }
+
+        synchronized (state) {
+            Map<UUID, LayerPlan.PlannedMarker> published = new HashMap<>();
+            state.published.forEach((id, fingerprint) -> {
+                Marker<?> marker = (fingerprint.locked() ? state.lockedMarkers : state.publicMarkers)
+                        .get(WaystoneMarkerFactory.markerKey(id));
+                if (marker != null) {
+                    published.put(id, new LayerPlan.PlannedMarker(marker, fingerprint));
+                }
+            });
+            return published;
+        }
+    }
+
+    /**
+     * Finds every world a set of waystones is currently published in.
+     * Deleted and moved waystones are removed from these worlds, so stale
+     * markers do not depend on which snapshot last saw the waystone.
+     * 
+     * @param warpIds Ids of the waystones to look up
+     * @return World keys by warp id, containing only ids that are published somewhere
+     */
+    public Map<UUID, Set<String>> findPublishedWorlds(Collection<UUID> warpIds) {
+        Map<UUID, Set<String>> publishedIn = new HashMap<>();
+        for (Map.Entry<String, WorldState> world : worlds.entrySet()) {
+            WorldState state = world.getValue();
+            synchronized (state) {
+                for (UUID id : warpIds) {
+                    if (state.published.containsKey(id)) {
+                        publishedIn.computeIfAbsent(id, k -> new HashSet<>()).add(world.getKey());
+                    }
+                }
+            }
+        }
+        return publishedIn;
+    }
+
+    /**
+     * Forgets the published state of a world.
+     * Must be called whenever the world's layer is replaced by a fresh, empty one.
+     * 
+     * @param worldKey Key of the world to reset
+     */
+    public void reset(String worldKey) {
+        if (worldKey != null) {
+            worlds.remove(worldKey);
+        }
+    }
+
+    /**
+     * Forgets the published state of all worlds.
+     */
+    public void resetAll() {
+        worlds.clear();
+    }
+
+    /**
+     * Builds the marker of one waystone from its snapshot row.
+     */
+    @FunctionalInterface
+    public interface MarkerBuilder {
+        /**
+         * @param snapshot Snapshot holding the waystone
+         * @param row Row of the waystone
+         * @param fingerprint Fingerprint read from the row
+         * @return The marker, or null if it could not be built
+         */
+        Marker<?> build(WarpSnapshot snapshot, int row, WarpFingerprint fingerprint);
+    }
+
+    /**
+     * Published state of one world: the fingerprint of every published
+     * waystone and the single reference to each marker, kept per layer.
+     */
+    private static final class WorldState {
+        private final Map<UUID, WarpFingerprint> published = new HashMap<>();
+        private final Map<String, Marker<?>> publicMarkers = new LinkedHashMap<>();
+        private final Map<String, Marker<?>> lockedMarkers = new LinkedHashMap<>();
+    }
+
+    /**
+     * Changes routed to one of a world's layers.
+     */
+    private static final class LayerChanges {
+        private final Map<UUID, LayerPlan.PlannedMarker> upserts = new HashMap<>();
+        private final Set<UUID> removals = new HashSet<>();
+
+        /**
+         * Applies the changes to the layer's markers and publishes them, if anything changed.
+         * The markers are kept up to date even while the layer is hidden, which only happens
+         * after all of its waystones were removed.
+         */
+        void commit(String worldKey, Map<String, Marker<?>> markers, SnapshotLayer layer, MarkerClusterer clusterer) {
+            if (upserts.isEmpty() && removals.isEmpty()) {
+                return;
+            }
+
+            for (UUID id : removals) {
+                markers.remove(WaystoneMarkerFactory.markerKey(id));
+            }
+
+            // Same key replaces the existing marker in place
+            for (LayerPlan.PlannedMarker marker : upserts.values()) {
+                markers.put(marker.marker().getKey(), marker.marker());
+            }
+
+            if (layer == null) {
+                return;
+            }
+
+            // Fold members of dense cells into cluster markers
+            if (clusterer != null) {
+                clusterer.apply(new LayerPlan(worldKey, upserts, removals, 0, 0));
+                layer.publish(clusterer.compose(markers.values()));
+            } else {
+                layer.publish(markers.values());
+            }
+        }
+    }
+
+    private WorldState state(String worldKey) {
+        return worlds.computeIfAbsent(worldKey, k -> new WorldState());
+    }
+}
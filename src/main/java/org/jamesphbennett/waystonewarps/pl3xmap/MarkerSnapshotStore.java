@@ -0,0 +1,250 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Persists the published waystone markers in a compact binary file.
+ * 
+ * Responsibilities:
+ * - Write every world's published fingerprints and rendered tooltips on shutdown
+ * - Read them back through a memory-mapped buffer on startup
+ * - Reject files written by another format or tooltip template version
+ * 
+ * Layout (big-endian): magic, format version, template hash, the owner name
+ * table, then per world its key, world UUID and markers. Each marker stores
+ * its warp UUID, coordinates, locked flag, owner table index, name and
+ * tooltip. Strings are UTF-8 with an int length prefix.
+ * 
+ * The file is written to a temporary file first and moved into place, so a
+ * crash never leaves a half-written snapshot behind.
+ * 
+ * Thread-safe: Stateless apart from the file path; callers must not write concurrently.
+ */
+public class MarkerSnapshotStore {
+    private static final int MAGIC = 0x57574D53; // "WWMS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int NO_OWNER = -1;
+
+    private final Path file;
+    private final int templateHash;
+
+    /**
+     * Creates a new snapshot store.
+     * 
+     * @param file File holding the snapshot
+     * @throws IllegalArgumentException if file is null
+     */
+    public MarkerSnapshotStore(File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("File cannot be null");
+        }
+
+        this.file = file.toPath();
+        // Tooltips rendered by another markup version or for another stylesheet must not be shown
+        this.templateHash = Objects.hash(TooltipTemplate.VERSION, TooltipTemplate.STYLESHEET);
+    }
+
+    /**
+     * Writes the published markers of all worlds.
+     * 
+     * @param markersByWorld Markers to persist, by world key
+     * @param ownerNames Resolved owner names to persist alongside
+     * @throws IOException if the file cannot be written
+     */
+    public void write(Map<String, List<Entry>> markersByWorld, Map<UUID, String> ownerNames) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+
+        Map<UUID, Integer> ownerIndexes = new LinkedHashMap<>();
+        for (List<Entry> entries : markersByWorld.values()) {
+            for (Entry entry : entries) {
+                UUID ownerId = entry.fingerprint().ownerId();
+                if (ownerId != null) {
+                    ownerIndexes.putIfAbsent(ownerId, ownerIndexes.size());
+                }
+            }
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(templateHash);
+
+            out.writeInt(ownerIndexes.size());
+            for (UUID ownerId : ownerIndexes.keySet()) {
+                writeUuid(out, ownerId);
+                writeString(out, ownerNames.get(ownerId));
+            }
+
+            out.writeInt(markersByWorld.size());
+            for (Map.Entry<String, List<Entry>> world : markersByWorld.entrySet()) {
+                List<Entry> entries = world.getValue();
+                writeString(out, world.getKey());
+                writeUuid(out, entries.isEmpty() ? null : entries.getFirst().fingerprint().worldId());
+                out.writeInt(entries.size());
+
+                for (Entry entry : entries) {
+                    WarpFingerprint fingerprint = entry.fingerprint();
+                    writeUuid(out, entry.warpId());
+                    out.writeInt(fingerprint.x());
+                    out.writeInt(fingerprint.y());
+                    out.writeInt(fingerprint.z());
+                    out.writeBoolean(fingerprint.locked());
+                    out.writeInt(fingerprint.ownerId() == null ? NO_OWNER : ownerIndexes.get(fingerprint.ownerId()));
+                    writeString(out, fingerprint.name());
+                    writeString(out, entry.tooltip());
+                }
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads the snapshot through a read-only memory map.
+     * 
+     * @return The persisted markers, or null if there is no compatible snapshot
+     * @throws IOException if the file cannot be read or is corrupt
+     */
+    public Contents read() throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 12 || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a waystone marker snapshot");
+            }
+            if (buffer.getInt() != FORMAT_VERSION || buffer.getInt() != templateHash) {
+                return null;
+            }
+
+            int ownerCount = buffer.getInt();
+            List<UUID> ownerIds = new ArrayList<>(Math.min(ownerCount, buffer.remaining()));
+            Map<UUID, String> ownerNames = new HashMap<>();
+            for (int i = 0; i < ownerCount; i++) {
+                UUID ownerId = readUuid(buffer);
+                String name = readString(buffer);
+                ownerIds.add(ownerId);
+                if (name != null) {
+                    ownerNames.put(ownerId, name);
+                }
+            }
+
+            int worldCount = buffer.getInt();
+            Map<String, List<Entry>> markersByWorld = new LinkedHashMap<>();
+            for (int w = 0; w < worldCount; w++) {
+                String worldKey = readString(buffer);
+                UUID worldId = readUuid(buffer);
+                int count = buffer.getInt();
+
+                List<Entry> entries = new ArrayList<>(Math.min(count, buffer.remaining()));
+                for (int i = 0; i < count; i++) {
+                    UUID warpId = readUuid(buffer);
+                    int x = buffer.getInt();
+                    int y = buffer.getInt();
+                    int z = buffer.getInt();
+                    boolean locked = buffer.get() != 0;
+                    int owner = buffer.getInt();
+                    String name = readString(buffer);
+                    String tooltip = readString(buffer);
+
+                    WarpFingerprint fingerprint = new WarpFingerprint(x, y, z, name, locked,
+                            owner == NO_OWNER ? null : ownerIds.get(owner), worldId);
+                    entries.add(new Entry(warpId, fingerprint, tooltip));
+                }
+                markersByWorld.put(worldKey, entries);
+            }
+            return new Contents(markersByWorld, ownerNames);
+        } catch (RuntimeException e) {
+            // Truncated or garbled data surfaces as buffer or index errors
+            throw new IOException("Corrupt waystone marker snapshot: " + e, e);
+        }
+    }
+
+    /**
+     * @return The file holding the snapshot
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeBoolean(uuid != null);
+        if (uuid != null) {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }
+    }
+
+    private static UUID readUuid(ByteBuffer buffer) {
+        return buffer.get() == 0 ? null : new UUID(buffer.getLong(), buffer.getLong());
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        String value = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * One persisted waystone marker.
+     * 
+     * @param warpId Id of the waystone
+     * @param fingerprint Fingerprint the marker was built from
+     * @param tooltip Rendered tooltip HTML
+     */
+    public record Entry(UUID warpId, WarpFingerprint fingerprint, String tooltip) {
+    }
+
+    /**
+     * Everything read from a snapshot.
+     * 
+     * @param markersByWorld Persisted markers, by world key
+     * @param ownerNames Owner names that were resolved when the snapshot was written
+     */
+    public record Contents(Map<String, List<Entry>> markersByWorld, Map<UUID, String> ownerNames) {
+        /**
+         * @return Total number of persisted markers
+         */
+        public int size() {
+            int size = 0;
+            for (List<Entry> entries : markersByWorld.values()) {
+                size += entries.size();
+            }
+            return size;
+        }
+    }
+}
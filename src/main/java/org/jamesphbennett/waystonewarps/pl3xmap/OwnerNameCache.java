@@ -0,0 +1,198 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Non-blocking cache of waystone owner names.
+ * 
+ * Owner names are never looked up on the calling thread. Unknown owners are
+ * reported with a placeholder and resolved in bulk on an async task; once
+ * resolved, the affected owner ids are handed back on the main thread so only
+ * their markers need to be patched. Names of joining players are refreshed
+ * from PlayerJoinEvent to pick up name changes. Names seeded from an earlier
+ * run are shown right away but stay provisional until the next bulk prefetch
+ * has resolved them again.
+ * 
+ * Thread-safe: Lookups may happen from any thread, callbacks run on the main thread.
+ */
+public class OwnerNameCache implements Listener {
+    public static final String PLACEHOLDER_NAME = "Loading...";
+    private static final String UNKNOWN_NAME = "Unknown";
+
+    private final Plugin plugin;
+    private final Consumer<Set<UUID>> onNamesChanged;
+    private final ConcurrentHashMap<UUID, String> names;
+    private final Set<UUID> pending;
+    private final ConcurrentHashMap<UUID, String> provisional;
+
+    /**
+     * Creates a new owner name cache.
+     * 
+     * @param plugin The plugin instance for logging and scheduling
+     * @param onNamesChanged Called on the main thread with owner ids whose name was resolved or changed
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public OwnerNameCache(Plugin plugin, Consumer<Set<UUID>> onNamesChanged) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (onNamesChanged == null) {
+            throw new IllegalArgumentException("Name change callback cannot be null");
+        }
+
+        this.plugin = plugin;
+        this.onNamesChanged = onNamesChanged;
+        this.names = new ConcurrentHashMap<>();
+        this.pending = ConcurrentHashMap.newKeySet();
+        this.provisional = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Returns the cached name of a player without blocking.
+     * Unknown players are queued for resolution and reported with a placeholder.
+     * 
+     * @param playerId UUID of the player
+     * @return The player name, or a placeholder if it is not resolved yet
+     */
+    public String getName(UUID playerId) {
+        if (playerId == null) {
+            return UNKNOWN_NAME;
+        }
+
+        String name = names.get(playerId);
+        if (name != null) {
+            return name;
+        }
+
+        prefetch(List.of(playerId));
+        return PLACEHOLDER_NAME;
+    }
+
+    /**
+     * Returns the cached name of a player without queuing unknown players.
+     * 
+     * @param playerId UUID of the player
+     * @return The player name, or null if it is not resolved yet
+     */
+    public String getCachedName(UUID playerId) {
+        return playerId == null ? null : names.get(playerId);
+    }
+
+    /**
+     * Fills in names known from an earlier run, such as a persisted marker snapshot.
+     * Names that are already cached are kept, and no change callback is fired.
+     * Seeded names are provisional: the next prefetch covering their player
+     * resolves them again and reports the players whose name changed since.
+     * 
+     * @param knownNames Names by player UUID
+     */
+    public void seed(Map<UUID, String> knownNames) {
+        knownNames.forEach((playerId, name) -> {
+            if (playerId != null && name != null && names.putIfAbsent(playerId, name) == null) {
+                provisional.put(playerId, name);
+            }
+        });
+    }
+
+    /**
+     * Resolves all unknown or provisionally named players of a batch on a single async task.
+     * Players that are already resolved or being resolved are skipped.
+     * 
+     * @param playerIds UUIDs of the players to resolve
+     */
+    public void prefetch(Collection<UUID> playerIds) {
+        List<UUID> batch = new ArrayList<>();
+        for (UUID playerId : playerIds) {
+            if (playerId != null && (!names.containsKey(playerId) || provisional.containsKey(playerId))
+                    && pending.add(playerId)) {
+                batch.add(playerId);
+            }
+        }
+
+        if (batch.isEmpty() || !plugin.isEnabled()) {
+            return;
+        }
+
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> resolve(batch));
+    }
+
+    /**
+     * Resolves a batch of player names off the main thread.
+     * 
+     * @param batch UUIDs of the players to resolve
+     */
+    private void resolve(List<UUID> batch) {
+        Set<UUID> resolved = new HashSet<>();
+        try {
+            for (UUID playerId : batch) {
+                String name = Bukkit.getOfflinePlayer(playerId).getName();
+                String resolvedName = name != null ? name : UNKNOWN_NAME;
+                String seeded = provisional.remove(playerId);
+                if (seeded != null) {
+                    // Replace the seeded name unless a join event updated it in the meantime
+                    if (names.replace(playerId, seeded, resolvedName) && !resolvedName.equals(seeded)) {
+                        resolved.add(playerId);
+                    }
+                } else if (names.putIfAbsent(playerId, resolvedName) == null) {
+                    // Keep a name that arrived from a join event in the meantime
+                    resolved.add(playerId);
+                }
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Error resolving waystone owner names: " + e.getMessage());
+        } finally {
+            batch.forEach(pending::remove);
+        }
+
+        if (!resolved.isEmpty() && plugin.isEnabled()) {
+            plugin.getServer().getScheduler().runTask(plugin, () -> onNamesChanged.accept(resolved));
+        }
+    }
+
+    /**
+     * Updates the cached name of joining players so renamed owners are shown correctly.
+     * 
+     * @param event The player join event
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        String name = player.getName();
+        if (name == null) {
+            return;
+        }
+
+        provisional.remove(player.getUniqueId());
+        String previous = names.put(player.getUniqueId(), name);
+        if (!name.equals(previous)) {
+            try {
+                onNamesChanged.accept(Set.of(player.getUniqueId()));
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error updating markers for renamed owner " + name + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Number of cached owner names
+     */
+    public int size() {
+        return names.size();
+    }
+}
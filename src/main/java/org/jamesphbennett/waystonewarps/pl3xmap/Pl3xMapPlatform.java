@@ -0,0 +1,80 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.Pl3xMap;
+import net.pl3x.map.core.image.IconImage;
+import net.pl3x.map.core.markers.layer.Layer;
+import net.pl3x.map.core.world.World;
+import org.bukkit.Bukkit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * {@link MapPlatform} backed by the running Pl3xMap instance and Bukkit.
+ * 
+ * Stateless: every call reads the current Pl3xMap registries, so it keeps
+ * working across Pl3xMap reloads.
+ */
+public class Pl3xMapPlatform implements MapPlatform {
+
+    @Override
+    public Collection<MapWorld> getWorlds() {
+        Collection<World> worlds = Pl3xMap.api().getWorldRegistry().values();
+        List<MapWorld> result = new ArrayList<>(worlds.size());
+        for (World world : worlds) {
+            if (world != null) {
+                result.add(new Pl3xMapWorld(world));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasIcon(String key) {
+        return Pl3xMap.api().getIconRegistry().has(key);
+    }
+
+    @Override
+    public void registerIcon(IconImage image) {
+        Pl3xMap.api().getIconRegistry().register(image);
+    }
+
+    @Override
+    public void unregisterIcon(String key) {
+        Pl3xMap.api().getIconRegistry().unregister(key);
+    }
+
+    /**
+     * Adapter for a Pl3xMap world.
+     */
+    private record Pl3xMapWorld(World world) implements MapWorld {
+
+        @Override
+        public String getName() {
+            return world.getName();
+        }
+
+        @Override
+        public UUID getBukkitWorldId() {
+            org.bukkit.World bukkitWorld = Bukkit.getWorld(world.getName());
+            return bukkitWorld != null ? bukkitWorld.getUID() : null;
+        }
+
+        @Override
+        public Layer getLayer(String key) {
+            return world.getLayerRegistry().has(key) ? world.getLayerRegistry().get(key) : null;
+        }
+
+        @Override
+        public void registerLayer(Layer layer) {
+            world.getLayerRegistry().register(layer);
+        }
+
+        @Override
+        public void unregisterLayer(String key) {
+            world.getLayerRegistry().unregister(key);
+        }
+    }
+}
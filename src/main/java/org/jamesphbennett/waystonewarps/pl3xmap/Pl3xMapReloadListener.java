@@ -4,60 +4,115 @@ import net.pl3x.map.core.event.EventHandler;
 import net.pl3x.map.core.event.EventListener;
 import net.pl3x.map.core.event.server.Pl3xMapEnabledEvent;
 import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
 
 /**
  * Event listener for automatic recovery from Pl3xMap reloads.
  * 
  * When /map reload is executed, Pl3xMap clears all registered layers
- * and fires a Pl3xMapEnabledEvent. This listener detects that event and
- * automatically re-registers all waystone layers.
+ * and fires a Pl3xMapEnabledEvent. This listener waits until Pl3xMap's
+ * world registry is populated again, checking once per tick, and then
+ * re-attaches the existing waystone layers with the markers they already
+ * show. A full refresh is only requested for worlds that never had a layer.
  * 
  * Thread-safe: Event handlers are called on the main Bukkit thread.
  */
 public class Pl3xMapReloadListener implements EventListener {
-    private static final long RELOAD_DELAY_TICKS = 20L; // 1 second
+    private static final long MAX_WAIT_TICKS = 200L; // 10 seconds
     
     private final Plugin plugin;
     private final Pl3xmapLayerManager layerManager;
+    private final RefreshCoordinator refreshCoordinator;
+    private BukkitTask readinessCheck;
     
     /**
      * Creates a new reload listener.
      * 
      * @param plugin The plugin instance for logging and scheduling
-     * @param layerManager The layer manager to refresh after reload
+     * @param layerManager The layer manager whose layers are re-attached after reload
+     * @param refreshCoordinator The coordinator that runs a full refresh when re-attaching is not enough
      * @throws IllegalArgumentException if any parameter is null
      */
-    public Pl3xMapReloadListener(Plugin plugin, Pl3xmapLayerManager layerManager) {
+    public Pl3xMapReloadListener(Plugin plugin, Pl3xmapLayerManager layerManager,
+                                 RefreshCoordinator refreshCoordinator) {
         if (plugin == null) {
             throw new IllegalArgumentException("Plugin cannot be null");
         }
         if (layerManager == null) {
             throw new IllegalArgumentException("Layer manager cannot be null");
         }
+        if (refreshCoordinator == null) {
+            throw new IllegalArgumentException("Refresh coordinator cannot be null");
+        }
         
         this.plugin = plugin;
         this.layerManager = layerManager;
+        this.refreshCoordinator = refreshCoordinator;
     }
     
     /**
      * Handles Pl3xMap reload events.
-     * Schedules delayed re-registration to ensure Pl3xMap is fully initialized.
+     * Polls every tick until Pl3xMap's worlds are registered again, then re-attaches the layers.
      * 
      * @param event The Pl3xMap enabled event
      */
     @EventHandler
     public void onPl3xMapEnabled(Pl3xMapEnabledEvent event) {
-        plugin.getLogger().info("Detected Pl3xMap reload, re-registering waystone layers...");
+        plugin.getLogger().info("Detected Pl3xMap reload, waiting for its worlds to re-attach waystone layers...");
+        
+        // A second reload restarts the wait
+        if (readinessCheck != null) {
+            readinessCheck.cancel();
+        }
         
-        // Schedule re-registration with delay to ensure Pl3xMap is ready
-        plugin.getServer().getScheduler().runTaskLater(plugin, () -> {
-            try {
-                layerManager.refreshAllMarkers();
-                plugin.getLogger().info("Waystone layers re-registered after Pl3xMap reload");
-            } catch (Exception e) {
-                plugin.getLogger().severe("Failed to re-register layers after Pl3xMap reload: " + e.getMessage());
-                e.printStackTrace();
+        long[] waited = {0L};
+        readinessCheck = plugin.getServer().getScheduler().runTaskTimer(plugin, () -> {
+            boolean ready = layerManager.isMapReady();
+            if (!ready && ++waited[0] < MAX_WAIT_TICKS) {
+                return;
+            }
+            
+            readinessCheck.cancel();
+            readinessCheck = null;
+            if (!ready) {
+                plugin.getLogger().warning("Pl3xMap worlds still incomplete after " + MAX_WAIT_TICKS
+                        + " ticks, re-attaching waystone layers anyway");
             }
-        }, RELOAD_DELAY_TICKS);
+            reattach(waited[0]);
+        }, 1L, 1L);
+    }
+    
+    /**
+     * Re-attaches the layers, falling back to a full refresh if some world has none yet.
+     * 
+     * @param waitedTicks Ticks spent waiting for Pl3xMap, for logging
+     */
+    private void reattach(long waitedTicks) {
+        layerManager.reattachLayers().whenComplete((complete, error) -> {
+            if (error == null && complete) {
+                plugin.getLogger().info("Waystone layers re-attached " + waitedTicks
+                        + " tick(s) after Pl3xMap reload");
+                return;
+            }
+            if (error != null) {
+                plugin.getLogger().warning("Failed to re-attach waystone layers: " + error.getMessage());
+            }
+            requestFullRefresh();
+        });
+    }
+    
+    /**
+     * Re-registers the layers with a full refresh when re-attaching was not enough.
+     */
+    private void requestFullRefresh() {
+        refreshCoordinator.request(RefreshCoordinator.Kind.FULL, RefreshMetrics.Source.RELOAD_LISTENER)
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        plugin.getLogger().info("Waystone layers re-registered after Pl3xMap reload");
+                    } else {
+                        plugin.getLogger().severe("Failed to re-register layers after Pl3xMap reload: "
+                                + error.getMessage());
+                    }
+                });
     }
 }
@@ -2,72 +2,167 @@ package org.jamesphbennett.waystonewarps.pl3xmap;
 
 import dev.mizarc.waystonewarps.domain.warps.Warp;
 import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
-import net.pl3x.map.core.Pl3xMap;
-import net.pl3x.map.core.markers.layer.SimpleLayer;
 import net.pl3x.map.core.markers.marker.Marker;
-import net.pl3x.map.core.world.World;
-import org.bukkit.Bukkit;
 import org.bukkit.plugin.Plugin;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntPredicate;
 
 /**
  * Manages Pl3xMap layers for waystone markers across all worlds.
  * 
  * Responsibilities:
- * - Register and maintain waystone layers for each Pl3xMap world
+ * - Register and maintain a public and a locked waystone layer for each Pl3xMap world
+ * - Move a waystone's marker between the two layers when it is locked or unlocked
+ * - Only build markers for worlds that contain waystones; empty worlds keep an empty layer
+ * - Materialize the layer of a world that was loaded later once a change first needs it
  * - Create and update waystone markers based on WarpRepository data
- * - Handle Pl3xMap reloads by detecting and re-registering missing layers
+ * - Reconcile layers incrementally so only changed markers are rebuilt
+ * - Patch markers of owners whose name was resolved in the background
+ * - Apply targeted updates for individual waystones reported by events
+ * - Skip worlds whose waystones did not change during change checks
+ * - Handle Pl3xMap reloads by re-attaching the existing layers and their markers
  * - Filter waystones by world and visibility settings
+ * - Maintain a per-world spatial index of the published waystones
+ * - Optionally group dense waystone areas into cluster markers
+ * - Optionally show a density heatmap layer, updated from the same committed changes
+ * - Optionally persist the published markers and show them right away on the next start
+ * - Apply changed icon sizes, layer settings and time slicing at runtime without a full rebuild
  * 
- * Thread-safe: Uses ConcurrentHashMap for concurrent access support.
+ * Every refresh goes through a {@link MarkerBuildPipeline}: the snapshot is
+ * taken on the main thread, markers and tooltips are built on worker threads,
+ * and the finished plans are published to copy-on-write layers on the main thread,
+ * each world in a single atomic swap. With time slicing enabled, the snapshot of
+ * a full refresh is spread over several ticks by a {@link TickSlicer}.
+ * 
+ * Thread-safe: Refreshes may be requested from any thread and are serialized by the pipeline.
  */
 public class Pl3xmapLayerManager {
     private static final String LAYER_KEY = "waystones";
     private static final String LAYER_LABEL = "Waystones";
-    private static final int LAYER_PRIORITY = 10;
-    private static final int LAYER_UPDATE_INTERVAL = 20; // seconds
+    private static final String LOCKED_LAYER_KEY = "waystones_locked";
+    private static final String LOCKED_LAYER_LABEL = "Locked Waystones";
+    private static final String DENSITY_LAYER_KEY = "waystones_density";
+    private static final String DENSITY_LAYER_LABEL = "Waystone Density";
+    private static final int SPATIAL_CELL_SIZE = 128; // blocks
+    private static final String SNAPSHOT_FILE = "markers.bin";
 
     private final Plugin plugin;
+    private final MapPlatform platform;
     private final WarpRepository warpRepository;
-    private final boolean showLockedWaystones;
-    private final ConcurrentHashMap<World, SimpleLayer> layers;
+    private volatile boolean showLockedWaystones;
+    private volatile LayerSettings publicLayerSettings;
+    private volatile LayerSettings lockedLayerSettings;
+    private final ConcurrentHashMap<String, WaystoneLayers> layers;
+    private final ClusterSettings clusterSettings;
+    private final HeatmapSettings heatmapSettings;
     private final WaystoneMarkerFactory markerFactory;
+    private final MarkerReconciler reconciler;
+    private final OwnerNameCache ownerNames;
+    private final WarpChangeDetector changeDetector;
+    private final MarkerBuildPipeline pipeline;
+    private final RefreshMetrics metrics;
+    private volatile TickSlicer slicer;
+    private final MarkerSnapshotStore snapshotStore;
+    private volatile WarpSnapshot lastSnapshot;
+    private volatile boolean fullRefreshNeeded;
 
     /**
      * Creates a new layer manager.
      * 
      * @param plugin The plugin instance for logging and scheduling
      * @param warpRepository Repository containing waystone data
-     * @param showLockedWaystones Whether to display private/locked waystones
+     * @param publicLayerSettings Settings of the layer showing unlocked waystones
+     * @param lockedLayerSettings Settings of the layer showing locked waystones, or null to hide them
+     * @param iconSize Size of waystone icons in pixels
+     * @param tooltipCacheSize Maximum number of cached tooltips (0 disables caching)
+     * @param clusterSettings Clustering of dense waystone areas, or null to show every waystone
+     * @param heatmapSettings Density heatmap layer, or null to not show one
+     * @param sliceSettings Time slicing of full refreshes, or null to snapshot in a single tick
+     * @param persistMarkers Whether to save the published markers on shutdown and restore them on startup
+     */
+    public Pl3xmapLayerManager(Plugin plugin, WarpRepository warpRepository, LayerSettings publicLayerSettings,
+                               LayerSettings lockedLayerSettings, int iconSize, int tooltipCacheSize,
+                               ClusterSettings clusterSettings, HeatmapSettings heatmapSettings,
+                               SliceSettings sliceSettings, boolean persistMarkers) {
+        this(plugin, new Pl3xMapPlatform(), warpRepository, publicLayerSettings, lockedLayerSettings, iconSize,
+                tooltipCacheSize, clusterSettings, heatmapSettings, sliceSettings, persistMarkers);
+    }
+
+    /**
+     * Creates a new layer manager working against a specific map platform.
+     * 
+     * @param plugin The plugin instance for logging and scheduling
+     * @param platform The map worlds and registries to publish to
+     * @param warpRepository Repository containing waystone data
+     * @param publicLayerSettings Settings of the layer showing unlocked waystones
+     * @param lockedLayerSettings Settings of the layer showing locked waystones, or null to hide them
      * @param iconSize Size of waystone icons in pixels
+     * @param tooltipCacheSize Maximum number of cached tooltips (0 disables caching)
+     * @param clusterSettings Clustering of dense waystone areas, or null to show every waystone
+     * @param heatmapSettings Density heatmap layer, or null to not show one
+     * @param sliceSettings Time slicing of full refreshes, or null to snapshot in a single tick
+     * @param persistMarkers Whether to save the published markers on shutdown and restore them on startup
      */
-    public Pl3xmapLayerManager(Plugin plugin, WarpRepository warpRepository, boolean showLockedWaystones, int iconSize) {
+    public Pl3xmapLayerManager(Plugin plugin, MapPlatform platform, WarpRepository warpRepository,
+                               LayerSettings publicLayerSettings, LayerSettings lockedLayerSettings,
+                               int iconSize, int tooltipCacheSize, ClusterSettings clusterSettings,
+                               HeatmapSettings heatmapSettings, SliceSettings sliceSettings,
+                               boolean persistMarkers) {
         this.plugin = plugin;
+        this.platform = platform;
         this.warpRepository = warpRepository;
-        this.showLockedWaystones = showLockedWaystones;
+        this.publicLayerSettings = publicLayerSettings;
+        this.lockedLayerSettings = lockedLayerSettings;
+        this.showLockedWaystones = lockedLayerSettings != null;
         this.layers = new ConcurrentHashMap<>();
-        this.markerFactory = new WaystoneMarkerFactory(plugin, iconSize);
+        this.clusterSettings = clusterSettings;
+        this.heatmapSettings = heatmapSettings;
+        this.changeDetector = new WarpChangeDetector();
+        this.ownerNames = new OwnerNameCache(plugin, this::refreshOwners);
+        this.markerFactory = new WaystoneMarkerFactory(plugin, iconSize, tooltipCacheSize, ownerNames);
+        this.reconciler = new MarkerReconciler();
+        this.metrics = new RefreshMetrics();
+        this.pipeline = new MarkerBuildPipeline(plugin, metrics);
+        this.slicer = sliceSettings == null ? null
+                : new TickSlicer(plugin, metrics, sliceSettings.tickBudgetMillis(), sliceSettings.backoffMillis());
+        this.snapshotStore = persistMarkers
+                ? new MarkerSnapshotStore(new File(plugin.getDataFolder(), SNAPSHOT_FILE))
+                : null;
     }
 
     /**
      * Initializes the Pl3xMap integration.
-     * Registers custom waystone icons and creates layers for all enabled worlds.
+     * Registers custom waystone icons and creates layers for all enabled worlds,
+     * shows the markers persisted on the last shutdown, then reconciles them
+     * against the repository through the build pipeline.
      */
     public void initialize() {
         try {
             // Register custom icons with Pl3xMap
-            markerFactory.registerIcons();
+            markerFactory.registerIcons(platform);
 
             // Register layers for all enabled Pl3xMap worlds
-            Collection<World> worlds = Pl3xMap.api().getWorldRegistry().values();
-            for (World world : worlds) {
+            for (MapPlatform.MapWorld world : platform.getWorlds()) {
                 registerLayer(world);
             }
 
             plugin.getLogger().info("Registered waystone layers for " + layers.size() + " world(s)");
+
+            // Show the last known markers right away, then bring them up to date off the main thread
+            restoreSnapshot();
+            refreshAllMarkers();
         } catch (Exception e) {
             plugin.getLogger().severe("Failed to initialize Pl3xMap integration: " + e.getMessage());
             e.printStackTrace();
@@ -79,11 +174,19 @@ public class Pl3xmapLayerManager {
      * Should be called during plugin shutdown to prevent memory leaks.
      */
     public void shutdown() {
+        saveSnapshot();
+
         try {
-            for (SimpleLayer layer : layers.values()) {
-                layer.clearMarkers();
+            pipeline.shutdown();
+            TickSlicer currentSlicer = slicer;
+            if (currentSlicer != null) {
+                currentSlicer.shutdown();
+            }
+            for (WaystoneLayers worldLayers : layers.values()) {
+                worldLayers.clear();
             }
             layers.clear();
+            reconciler.resetAll();
             plugin.getLogger().info("Unregistered all waystone layers");
         } catch (Exception e) {
             plugin.getLogger().warning("Error during shutdown: " + e.getMessage());
@@ -91,160 +194,973 @@ public class Pl3xmapLayerManager {
     }
 
     /**
-     * Registers a waystone layer for a specific Pl3xMap world.
+     * Publishes the markers persisted on the last shutdown.
+     * The file is read and the markers are recreated on a worker thread; tooltips
+     * are reused as rendered, so no waystone data is needed. The following full
+     * refresh only rebuilds markers whose fingerprint differs.
+     */
+    private void restoreSnapshot() {
+        if (snapshotStore == null) {
+            return;
+        }
+
+        pipeline.submit(() -> Set.copyOf(layers.keySet()), worldKeys -> {
+                    long start = System.nanoTime();
+                    MarkerSnapshotStore.Contents contents;
+                    try {
+                        contents = snapshotStore.read();
+                    } catch (Exception e) {
+                        plugin.getLogger().warning("Ignoring unreadable marker snapshot: " + e.getMessage());
+                        contents = null;
+                    }
+                    if (contents == null) {
+                        return new RefreshOutput(null, List.of(), WarpChangeSet.empty());
+                    }
+
+                    // Persisted tooltips already show these names, so they need no patching
+                    ownerNames.seed(contents.ownerNames());
+
+                    List<LayerPlan> plans = new ArrayList<>();
+                    for (Map.Entry<String, List<MarkerSnapshotStore.Entry>> world
+                            : contents.markersByWorld().entrySet()) {
+                        if (!worldKeys.contains(world.getKey())) continue;
+
+                        Map<UUID, LayerPlan.PlannedMarker> upserts = new HashMap<>();
+                        for (MarkerSnapshotStore.Entry entry : world.getValue()) {
+                            Marker<?> marker = markerFactory.restoreMarker(entry.warpId(), entry.fingerprint(),
+                                    entry.tooltip(), world.getKey());
+                            upserts.put(entry.warpId(), new LayerPlan.PlannedMarker(marker, entry.fingerprint()));
+                        }
+                        plans.add(new LayerPlan(world.getKey(), upserts, Set.of(), upserts.size(), 0));
+                    }
+
+                    metrics.recordPhase(RefreshMetrics.Phase.BUILD, System.nanoTime() - start);
+                    plugin.getLogger().info("Restored " + contents.size() + " waystone marker(s) from "
+                            + snapshotStore.getFile().getFileName() + " in "
+                            + (System.nanoTime() - start) / 1_000_000 + "ms");
+                    return new RefreshOutput(null, plans, WarpChangeSet.empty());
+                }, this::publish)
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        Throwable cause = error.getCause() != null ? error.getCause() : error;
+                        plugin.getLogger().warning("Failed to restore marker snapshot: " + cause.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Persists the markers currently published in every world.
+     * Runs during shutdown, before the published state is discarded.
+     */
+    private void saveSnapshot() {
+        if (snapshotStore == null || lastSnapshot == null) {
+            // Nothing reconciled yet; keep the previous snapshot
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            Map<String, List<MarkerSnapshotStore.Entry>> markersByWorld = new HashMap<>();
+            Map<UUID, String> names = new HashMap<>();
+            int count = 0;
+
+            for (String worldKey : layers.keySet()) {
+                List<MarkerSnapshotStore.Entry> entries = new ArrayList<>();
+                Map<UUID, LayerPlan.PlannedMarker> published = reconciler.getPublished(worldKey);
+                for (Map.Entry<UUID, LayerPlan.PlannedMarker> marker : published.entrySet()) {
+                    WarpFingerprint fingerprint = marker.getValue().fingerprint();
+                    entries.add(new MarkerSnapshotStore.Entry(marker.getKey(), fingerprint,
+                            WaystoneMarkerFactory.tooltipOf(marker.getValue().marker())));
+
+                    String ownerName = ownerNames.getCachedName(fingerprint.ownerId());
+                    if (ownerName != null) {
+                        names.put(fingerprint.ownerId(), ownerName);
+                    }
+                }
+                markersByWorld.put(worldKey, entries);
+                count += entries.size();
+            }
+
+            snapshotStore.write(markersByWorld, names);
+            plugin.getLogger().info("Saved " + count + " waystone marker(s) to "
+                    + snapshotStore.getFile().getFileName() + " in " + (System.nanoTime() - start) / 1_000_000 + "ms");
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to save marker snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers empty waystone layers for a specific Pl3xMap world,
+     * replacing any waystone layers left behind by an older plugin instance.
      * 
-     * @param world The Pl3xMap world to register the layer for
+     * @param world The Pl3xMap world to register the layers for
      */
-    private void registerLayer(World world) {
+    private void registerLayer(MapPlatform.MapWorld world) {
         if (world == null) {
             plugin.getLogger().warning("Attempted to register layer for null world");
             return;
         }
 
         try {
-            // Create the layer
-            SimpleLayer layer = new SimpleLayer(LAYER_KEY, () -> LAYER_LABEL);
-            layer.setDefaultHidden(false);
-            layer.setShowControls(true);
-            layer.setPriority(LAYER_PRIORITY);
-            layer.setUpdateInterval(LAYER_UPDATE_INTERVAL);
+            for (String key : List.of(LAYER_KEY, LOCKED_LAYER_KEY, DENSITY_LAYER_KEY)) {
+                if (world.getLayer(key) != null) {
+                    world.unregisterLayer(key);
+                }
+            }
 
-            // Register the layer with Pl3xMap
-            world.getLayerRegistry().register(layer);
+            // Create the layers
+            SnapshotLayer publicLayer = createLayer(LAYER_KEY, LAYER_LABEL, publicLayerSettings);
+            SnapshotLayer lockedLayer = lockedLayerSettings == null ? null
+                    : createLayer(LOCKED_LAYER_KEY, LOCKED_LAYER_LABEL, lockedLayerSettings);
+            WaystoneSpatialIndex index = new WaystoneSpatialIndex(SPATIAL_CELL_SIZE);
+            WaystoneLayers worldLayers = new WaystoneLayers(publicLayer, lockedLayer, createClusterer(index),
+                    lockedLayer == null ? null : createClusterer(index), createHeatmap(index), index);
 
-            // Store layer for later updates
-            layers.put(world, layer);
+            // Register the layers with Pl3xMap
+            worldLayers.attach(world);
 
-            plugin.getLogger().info("Registered waystone layer for world: " + world.getName());
+            // Store layers for later updates; fresh layers start without markers
+            layers.put(world.getName(), worldLayers);
+            resetWorld(world.getName());
 
-            // Populate initial markers
-            refreshMarkers(world);
+            plugin.getLogger().info("Registered waystone layer" + (lockedLayer == null ? "" : "s")
+                    + " for world: " + world.getName());
         } catch (Exception e) {
             plugin.getLogger().severe("Failed to register layer for world " + world.getName() + ": " + e.getMessage());
         }
     }
 
     /**
-     * Refreshes all markers for a specific world.
-     * Fetches current waystone data, clears existing markers, and creates new ones.
+     * Creates an empty waystone layer.
      * 
-     * @param world The Pl3xMap world to refresh markers for
+     * @param key Layer key
+     * @param label Label shown in the layer controls
+     * @param settings Update interval, priority and visibility of the layer
+     * @return The new layer
      */
-    private void refreshMarkers(World world) {
-        if (world == null) {
-            plugin.getLogger().warning("Attempted to refresh markers for null world");
-            return;
+    private SnapshotLayer createLayer(String key, String label, LayerSettings settings) {
+        SnapshotLayer layer = new SnapshotLayer(key, () -> label);
+        layer.setShowControls(true);
+        applyLayerSettings(layer, settings);
+        // Tooltips only reference classes; the styles ship once with the layer
+        layer.setCss(TooltipTemplate.STYLESHEET);
+        return layer;
+    }
+
+    private static void applyLayerSettings(SnapshotLayer layer, LayerSettings settings) {
+        layer.setDefaultHidden(settings.defaultHidden());
+        layer.setPriority(settings.priority());
+        layer.setUpdateInterval(settings.updateInterval());
+    }
+
+    /**
+     * @param index Spatial index of the world the layer belongs to
+     * @return A new clusterer for one layer, or null if clustering is disabled
+     */
+    private MarkerClusterer createClusterer(WaystoneSpatialIndex index) {
+        return clusterSettings == null ? null
+                : new MarkerClusterer(markerFactory, index, clusterSettings.cellSize(), clusterSettings.minSize());
+    }
+
+    /**
+     * @param index Spatial index of the world
+     * @return A new density heatmap for one world, or null if the heatmap is disabled
+     */
+    private DensityHeatmap createHeatmap(WaystoneSpatialIndex index) {
+        if (heatmapSettings == null) {
+            return null;
         }
 
-        SimpleLayer layer = layers.get(world);
-        if (layer == null) {
-            plugin.getLogger().warning("No layer found for world: " + world.getName());
-            return;
+        SnapshotLayer layer = new SnapshotLayer(DENSITY_LAYER_KEY, () -> DENSITY_LAYER_LABEL);
+        layer.setShowControls(true);
+        applyLayerSettings(layer, heatmapSettings.layer());
+        return new DensityHeatmap(layer, index, heatmapSettings.cellSize());
+    }
+
+    /**
+     * Re-attaches an existing world's layers, with the markers they already show, to a world that lost them.
+     * 
+     * @param world The Pl3xMap world whose registry was reset
+     * @return true if the world had layers and they are registered again
+     */
+    private boolean reattachLayer(MapPlatform.MapWorld world) {
+        WaystoneLayers worldLayers = layers.get(world.getName());
+        if (worldLayers == null) {
+            return false;
         }
 
         try {
-            // Re-register icons in case Pl3xMap was reloaded
-            markerFactory.registerIcons();
+            return worldLayers.attach(world);
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to re-attach layer for world " + world.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Re-attaches every layer after a Pl3xMap reload.
+     * The waystones did not change, only Pl3xMap's registries were reset, so
+     * the layers keep their published markers and nothing is rebuilt. Runs
+     * through the pipeline, so it never interleaves with a refresh's publish.
+     * 
+     * @return Future completing with true if every world got its layer back,
+     *         false if a full refresh is still needed
+     */
+    public CompletableFuture<Boolean> reattachLayers() {
+        return pipeline.submit(this::attachExistingLayers, complete -> complete, complete -> { });
+    }
+
+    /**
+     * Snapshot stage of a re-attach, runs on the main thread.
+     * 
+     * @return true if every world got its layer back
+     */
+    private boolean attachExistingLayers() {
+        long start = System.nanoTime();
+        markerFactory.registerIcons(platform);
+
+        int reattached = 0;
+        boolean complete = lastSnapshot != null;
+        for (MapPlatform.MapWorld world : platform.getWorlds()) {
+            WaystoneLayers worldLayers = layers.get(world.getName());
+            if (worldLayers != null && worldLayers.isAttachedTo(world)) continue;
+
+            if (reattachLayer(world)) {
+                reattached++;
+            } else {
+                // A world we never built, or a layer we did not register
+                complete = false;
+            }
+        }
+
+        plugin.getLogger().info("Re-attached " + reattached + " waystone layer(s) in "
+                + (System.nanoTime() - start) / 1_000_000 + "ms");
+        return complete;
+    }
+
+    /**
+     * Refreshes markers for all worlds.
+     * Detects Pl3xMap reloads and automatically re-attaches or re-registers layers.
+     * Called manually via command, automatically after reload, and as a fallback
+     * when an incremental refresh failed.
+     * 
+     * @return Future completing once the markers were published
+     */
+    public CompletableFuture<Void> refreshAllMarkers() {
+        return pipeline.submitDeferred(this::snapshotAllWorlds, this::buildAllWorlds, this::publish)
+                .thenAccept(output -> {
+                    fullRefreshNeeded = false;
+                    plugin.getLogger().info("Refreshed waystone markers for all worlds");
+                    plugin.getLogger().info("Tooltip cache: " + markerFactory.getTooltipCache());
+                    markerFactory.getTooltipTemplate().getSizeStats().forEach((world, stats) ->
+                            plugin.getLogger().info("Tooltip size for world " + world + ": " + stats));
+                })
+                .whenComplete((ignored, error) -> handleFailure("Critical error during marker refresh", error));
+    }
+
+    /**
+     * Detects which waystones changed since the last refresh and updates only their markers.
+     * The repository is read once on the main thread, taking only the raw values; digests,
+     * change detection and marker building run on a worker and share that snapshot.
+     * 
+     * @return Future completing with the added, changed and removed waystone ids once published
+     */
+    public CompletableFuture<WarpChangeSet> refreshChangedMarkers() {
+        return refreshChangedMarkers(WorldScope.all());
+    }
+
+    /**
+     * Detects which waystones changed in some worlds since the last refresh and updates only their markers.
+     * Worlds whose waystones are unchanged as a whole are skipped before any per-waystone diff.
+     * 
+     * @param scope Worlds to check
+     * @return Future completing with the added, changed and removed waystone ids once published
+     */
+    public CompletableFuture<WarpChangeSet> refreshChangedMarkers(WorldScope scope) {
+        if (fullRefreshNeeded || lastSnapshot == null) {
+            return refreshAllMarkers().thenApply(ignored -> WarpChangeSet.empty());
+        }
+
+        return pipeline.submit(() -> {
+                    long captureStart = System.nanoTime();
+                    Set<UUID> worldIds = scope.isAll() ? null : worldIdsIn(scope);
+                    // A scoped check only reads the raw values of waystones in its worlds
+                    WarpSnapshot.Builder capture = WarpSnapshot.builder(warpRepository.getAll(), worldIds);
+                    Map<UUID, String> worldKeys = worldKeysById(capture.getWorldIds());
+                    return new CheckInput(capture, lastSnapshot, worldIds, worldKeys, System.nanoTime() - captureStart);
+                }, input -> {
+                    long digestStart = System.nanoTime();
+                    WarpSnapshot current = input.capture().build();
+                    metrics.recordPhase(RefreshMetrics.Phase.SNAPSHOT,
+                            input.captureNanos() + System.nanoTime() - digestStart);
+
+                    WarpChangeSet changes = metrics.time(RefreshMetrics.Phase.DIFF,
+                            () -> changeDetector.detect(current, input.worldIds()));
+
+                    // Only the checked worlds were rebased, the rest of the last snapshot stays as published
+                    WarpSnapshot checked = input.worldIds() == null
+                            ? current
+                            : input.previous().patchWorlds(current, input.worldIds());
+                    ChangeInput changeInput = new ChangeInput(checked, changes.allIds(), changes, input.worldKeys());
+                    return metrics.time(RefreshMetrics.Phase.BUILD, () -> buildChanges(changeInput));
+                }, this::publish)
+                .thenApply(output -> {
+                    if (!output.changes().isEmpty()) {
+                        List<String> worlds = new ArrayList<>();
+                        for (LayerPlan plan : output.plans()) {
+                            worlds.add(plan.getWorldKey());
+                        }
+                        plugin.getLogger().info("Waystone changes detected in " + String.join(", ", worlds)
+                                + ": " + output.changes());
+                    }
+                    return output.changes();
+                })
+                .whenComplete((ignored, error) -> handleFailure("Error applying waystone changes", error));
+    }
+
+    /**
+     * Applies a targeted update for a set of waystones without a full refresh.
+     * Only the waystones in scope are looked up in the repository and compared,
+     * and only their markers are added, replaced or removed in the affected worlds.
+     * The last snapshot is patched with their current state instead of being recaptured.
+     * 
+     * @param warpIds Ids of waystones that may have changed or disappeared
+     * @param ownerIds Owners whose waystones may have been created or changed
+     * @return Future completing once the markers were published
+     */
+    public CompletableFuture<Void> refreshWarps(Set<UUID> warpIds, Set<UUID> ownerIds) {
+        if (fullRefreshNeeded || lastSnapshot == null) {
+            return refreshAllMarkers();
+        }
+
+        return pipeline.submit(() -> {
+                    WarpSnapshot previous = lastSnapshot;
+                    long snapshotStart = System.nanoTime();
+
+                    // Scope covers the requested ids plus every known and current waystone of the requested owners
+                    Set<UUID> scope = new HashSet<>(warpIds);
+                    Map<UUID, Warp> found = new HashMap<>();
+                    if (!ownerIds.isEmpty()) {
+                        previous.addWarpIdsOwnedBy(ownerIds, scope);
+                        for (UUID ownerId : ownerIds) {
+                            for (Warp warp : warpRepository.getByPlayer(ownerId)) {
+                                if (warp != null) {
+                                    found.put(warp.getId(), warp);
+                                }
+                            }
+                        }
+                        scope.addAll(found.keySet());
+                    }
+                    for (UUID id : scope) {
+                        if (!found.containsKey(id)) {
+                            Warp warp = warpRepository.getById(id);
+                            if (warp != null) {
+                                found.put(id, warp);
+                            }
+                        }
+                    }
+
+                    WarpSnapshot current = previous.patch(scope, found.values());
+                    metrics.recordPhase(RefreshMetrics.Phase.SNAPSHOT, System.nanoTime() - snapshotStart);
+
+                    // Keep the detector baseline in sync so the safety net does not report these again
+                    long diffStart = System.nanoTime();
+                    changeDetector.update(scope, current);
+                    metrics.recordPhase(RefreshMetrics.Phase.DIFF, System.nanoTime() - diffStart);
+                    return new ChangeInput(current, scope, WarpChangeSet.empty(),
+                            worldKeysById(current.getWorldIds()));
+                }, input -> metrics.time(RefreshMetrics.Phase.BUILD, () -> buildChanges(input)), this::publish)
+                .<Void>thenApply(ignored -> null)
+                .whenComplete((ignored, error) -> handleFailure("Error applying waystone update", error));
+    }
+
+    /**
+     * Rebuilds only the markers of waystones owned by the given players.
+     * Called on the main thread when owner names were resolved or changed.
+     * Names resolved while the first full refresh is still building are applied
+     * once it has published, since the snapshot is only read when this run starts.
+     * 
+     * @param ownerIds UUIDs of the owners whose name changed
+     * @return Future completing once the markers were published
+     */
+    private CompletableFuture<Void> refreshOwners(Set<UUID> ownerIds) {
+        if (ownerIds.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return pipeline.submit(() -> new OwnerInput(lastSnapshot, ownerIds, worldKeysById(Set.of())), input -> {
+                    // Nothing was ever published, the next full refresh builds with the cached names
+                    if (input.snapshot() == null) {
+                        return new RefreshOutput(null, List.of(), WarpChangeSet.empty());
+                    }
+
+                    long buildStart = System.nanoTime();
+                    List<LayerPlan> plans = new ArrayList<>();
+                    for (Map.Entry<UUID, String> world : input.worldKeys().entrySet()) {
+                        WarpSnapshot snapshot = input.snapshot();
+                        int[] affected = filterRows(snapshot.rows(world.getKey()), row -> {
+                            UUID ownerId = snapshot.ownerId(row);
+                            return ownerId != null && input.ownerIds().contains(ownerId);
+                        });
+
+                        if (affected.length > 0) {
+                            plans.add(reconciler.planPatch(world.getValue(), snapshot, affected,
+                                    markerBuilder(world.getValue())));
+                        }
+                    }
+                    metrics.recordPhase(RefreshMetrics.Phase.BUILD, System.nanoTime() - buildStart);
+                    return new RefreshOutput(input.snapshot(), plans, WarpChangeSet.empty());
+                }, this::publish)
+                .<Void>thenApply(ignored -> null)
+                .whenComplete((ignored, error) -> handleFailure("Error updating owner names", error));
+    }
+
+    /**
+     * Snapshot stage of a full refresh, starts on the main thread.
+     * Re-registers layers lost to a Pl3xMap reload, resolves which world
+     * belongs to which layer and reads the raw values of every waystone once.
+     * With time slicing enabled, they are read over several ticks. The
+     * snapshot itself is built by the build stage.
+     * 
+     * @return Future completing with the input for the build stage
+     */
+    private CompletableFuture<FullInput> snapshotAllWorlds() {
+        long start = System.nanoTime();
+        TickSlicer slicer = this.slicer;
+        Map<String, UUID> worldIds = registerAllWorlds();
+        Collection<Warp> warps = warpRepository.getAll();
+        plugin.getLogger().info("Refreshing markers for " + worldIds.size() + " world(s) from "
+                + warps.size() + " waystone(s)");
+
+        if (slicer == null) {
+            WarpSnapshot.Builder capture = WarpSnapshot.builder(warps);
+            return CompletableFuture.completedFuture(new FullInput(capture, worldIds, System.nanoTime() - start));
+        }
+
+        // Keep a stable copy, the repository may change while the slices run
+        List<Warp> pending = new ArrayList<>(warps);
+        WarpSnapshot.Builder capture = WarpSnapshot.builder(pending.size());
+        long setupNanos = System.nanoTime() - start;
+
+        return slicer.forEach(pending, capture::add).thenApply(report -> {
+            plugin.getLogger().info("Captured waystone snapshot: " + report);
+            return new FullInput(capture, worldIds, setupNanos + report.busyNanos());
+        });
+    }
+
+    /**
+     * Makes sure every Pl3xMap world has a waystone layer, runs on the main thread.
+     * 
+     * @return Bukkit world UUIDs by world key, for every world with a layer
+     */
+    private Map<String, UUID> registerAllWorlds() {
+        // Re-register icons in case Pl3xMap was reloaded
+        markerFactory.registerIcons(platform);
+
+        // Get current worlds from Pl3xMap
+        Collection<MapPlatform.MapWorld> currentWorlds = platform.getWorlds();
+
+        Set<String> currentKeys = new HashSet<>();
+        Map<String, UUID> worldIds = new HashMap<>();
+
+        for (MapPlatform.MapWorld world : currentWorlds) {
+            // Layers lost to a Pl3xMap reload still hold their published markers
+            if (!reattachLayer(world)) {
+                if (world.getLayer(LAYER_KEY) != null || world.getLayer(LOCKED_LAYER_KEY) != null) {
+                    // Left behind by an older plugin instance, replace them
+                    plugin.getLogger().info("Replacing stale waystone layer for world: " + world.getName());
+                } else {
+                    plugin.getLogger().info("Registering new layer for world: " + world.getName());
+                }
+                registerLayer(world);
+            }
+
+            if (!layers.containsKey(world.getName())) continue;
+            currentKeys.add(world.getName());
 
             // Get Bukkit world
-            org.bukkit.World bukkitWorld = Bukkit.getWorld(world.getName());
-            if (bukkitWorld == null) {
+            UUID worldId = world.getBukkitWorldId();
+            if (worldId == null) {
                 plugin.getLogger().warning("Could not find Bukkit world: " + world.getName());
-                return;
+                continue;
             }
 
-            // Clear existing markers
-            layer.clearMarkers();
+            worldIds.put(world.getName(), worldId);
+        }
+
+        // Forget layers of worlds that disappeared
+        for (String worldKey : new ArrayList<>(layers.keySet())) {
+            if (!currentKeys.contains(worldKey)) {
+                layers.remove(worldKey);
+                resetWorld(worldKey);
+                metrics.forgetWorld(worldKey);
+            }
+        }
 
-            // Get all warps and filter by world UUID
-            UUID worldUUID = bukkitWorld.getUID();
-            int markerCount = 0;
+        return worldIds;
+    }
 
-            Collection<Warp> warps = warpRepository.getAll();
-            for (Warp warp : warps) {
-                // Null check for safety
-                if (warp == null) continue;
+    /**
+     * Build stage of a full refresh, runs on worker threads.
+     * Builds the snapshot from the captured values, resets the change detector
+     * baseline and plans every world in parallel against its pre-partitioned
+     * slice of the snapshot.
+     * 
+     * @param input Output of the snapshot stage
+     * @return Plans to publish
+     */
+    private RefreshOutput buildAllWorlds(FullInput input) {
+        long digestStart = System.nanoTime();
+        WarpSnapshot snapshot = input.capture().build();
+        metrics.recordPhase(RefreshMetrics.Phase.SNAPSHOT, input.captureNanos() + System.nanoTime() - digestStart);
+        return metrics.time(RefreshMetrics.Phase.BUILD, () -> planAllWorlds(snapshot, input.worldIds()));
+    }
 
-                // Skip if warp is not in this world
-                if (!worldUUID.equals(warp.getWorldId())) {
-                    continue;
-                }
+    /**
+     * Resets the change detector baseline and plans every world against a snapshot.
+     * 
+     * @param snapshot Snapshot of all waystones
+     * @param worldIds Bukkit world UUIDs by world key
+     * @return Plans to publish
+     */
+    private RefreshOutput planAllWorlds(WarpSnapshot snapshot, Map<String, UUID> worldIds) {
+        changeDetector.reset(snapshot);
+        ownerNames.prefetch(snapshot.getOwnerIds());
+
+        // Worlds without waystones and without published markers need no plan at all
+        List<Map.Entry<String, UUID>> worlds = new ArrayList<>();
+        for (Map.Entry<String, UUID> world : worldIds.entrySet()) {
+            if (snapshot.rows(world.getValue()).length > 0 || reconciler.hasPublished(world.getKey())) {
+                worlds.add(world);
+            }
+        }
+
+        List<LayerPlan> plans = pipeline.parallel(worlds, world -> {
+            int[] rows = snapshot.rows(world.getValue());
+            // Skip locked waystones if configured, reading only the flag column
+            int[] visible = showLockedWaystones ? rows : filterRows(rows, row -> !snapshot.isLocked(row));
+            return reconciler.plan(world.getKey(), snapshot, visible, markerBuilder(world.getKey()));
+        });
+        return new RefreshOutput(snapshot, plans, WarpChangeSet.empty());
+    }
 
-                // Skip locked waystones if configured
-                if (!showLockedWaystones && warp.isLocked()) {
-                    continue;
+    /**
+     * Build stage of an incremental refresh, runs on worker threads.
+     * Plans upserts and removals for a known set of waystone ids; removals come from
+     * the worlds each waystone is published in, not from an earlier snapshot.
+     * 
+     * @param input Output of the snapshot stage
+     * @return Plans to publish
+     */
+    private RefreshOutput buildChanges(ChangeInput input) {
+        // Group upserts and removals by world key
+        WarpSnapshot current = input.current();
+        Map<String, List<Integer>> upserts = new HashMap<>();
+        Map<String, List<UUID>> removals = new HashMap<>();
+        Set<UUID> affectedOwners = new HashSet<>();
+
+        // Removals follow what is actually published, wherever the waystone was last shown
+        Map<UUID, Set<String>> publishedIn = reconciler.findPublishedWorlds(input.warpIds());
+
+        for (UUID id : input.warpIds()) {
+            int row = current.row(id);
+            String target = null;
+
+            if (row >= 0) {
+                affectedOwners.add(current.ownerId(row));
+                String worldKey = input.worldKeys().get(current.worldId(row));
+                if (worldKey != null && (showLockedWaystones || !current.isLocked(row))) {
+                    upserts.computeIfAbsent(worldKey, w -> new ArrayList<>()).add(row);
+                    target = worldKey;
                 }
+            }
 
-                // Add marker
-                addWarpMarker(layer, warp);
-                markerCount++;
+            // Deleted, hidden, or moved to another world
+            for (String worldKey : publishedIn.getOrDefault(id, Set.of())) {
+                if (!worldKey.equals(target)) {
+                    removals.computeIfAbsent(worldKey, w -> new ArrayList<>()).add(id);
+                }
             }
+        }
 
-            plugin.getLogger().info("Refreshed " + markerCount + " waystone marker(s) for world: " + bukkitWorld.getName());
-        } catch (Exception e) {
-            plugin.getLogger().severe("Error refreshing markers for world " + world.getName() + ": " + e.getMessage());
+        affectedOwners.remove(null);
+        ownerNames.prefetch(affectedOwners);
+
+        Set<String> affectedWorlds = new HashSet<>(upserts.keySet());
+        affectedWorlds.addAll(removals.keySet());
+
+        List<LayerPlan> plans = new ArrayList<>();
+        for (String worldKey : affectedWorlds) {
+            int[] rows = upserts.getOrDefault(worldKey, List.of()).stream().mapToInt(Integer::intValue).toArray();
+            plans.add(reconciler.planChanges(worldKey, current, rows,
+                    removals.getOrDefault(worldKey, List.of()), markerBuilder(worldKey)));
         }
+        return new RefreshOutput(input.current(), plans, input.changes());
     }
 
     /**
-     * Refreshes markers for all worlds.
-     * Detects Pl3xMap reloads and automatically re-registers layers.
-     * Called manually via command, automatically after reload, or when changes are detected.
+     * Publish stage of every refresh, runs on the main thread.
+     * Commits each world's finished plan to its layer.
+     * 
+     * @param output Output of the build stage
      */
-    public void refreshAllMarkers() {
-        try {
-            // Clear old layer references (they may be stale after /map reload)
-            layers.clear();
+    private void publish(RefreshOutput output) {
+        long start = System.nanoTime();
+        for (LayerPlan plan : output.plans()) {
+            WaystoneLayers worldLayers = layers.get(plan.getWorldKey());
+            if (worldLayers == null || plan.isEmpty()) continue;
 
-            // Get current worlds from Pl3xMap
-            Collection<World> currentWorlds = Pl3xMap.api().getWorldRegistry().values();
+            ReconcileResult result = reconciler.commit(worldLayers, plan);
+            metrics.recordMarkers(plan.getWorldKey(), worldLayers.size());
+            plugin.getLogger().info("Reconciled waystone markers for world " + plan.getWorldKey() + ": " + result);
+        }
+        if (output.snapshot() != null) {
+            lastSnapshot = output.snapshot();
+        }
+        metrics.recordPhase(RefreshMetrics.Phase.PUBLISH, System.nanoTime() - start);
+        metrics.recordRun(true);
+    }
 
-            plugin.getLogger().info("Refreshing markers for " + currentWorlds.size() + " world(s)");
+    /**
+     * Forgets everything published to a world, used when its layers are replaced.
+     * Clusters and heatmaps belong to the layers and are replaced with them.
+     * 
+     * @param worldKey Key of the world
+     */
+    private void resetWorld(String worldKey) {
+        reconciler.reset(worldKey);
+    }
 
-            // Re-register icons in case Pl3xMap was reloaded
-            markerFactory.registerIcons();
+    /**
+     * Logs a failed pipeline run and schedules a full refresh as recovery,
+     * since the detector baseline may be ahead of what the layers show.
+     * Runs cancelled or interrupted by a shutdown are expected and not logged.
+     */
+    private void handleFailure(String message, Throwable error) {
+        if (error == null || pipeline.isShutdown()) {
+            return;
+        }
 
-            // Register layers for all worlds
-            for (World world : currentWorlds) {
-                if (world == null) continue;
+        fullRefreshNeeded = true;
+        metrics.recordRun(false);
+        Throwable cause = error.getCause() != null ? error.getCause() : error;
+        plugin.getLogger().severe(message + ": " + cause.getMessage());
+        cause.printStackTrace();
+    }
 
-                // Check if layer already exists in this world
-                if (!world.getLayerRegistry().has(LAYER_KEY)) {
-                    plugin.getLogger().info("Registering new layer for world: " + world.getName());
-                    registerLayer(world);
-                } else {
-                    plugin.getLogger().info("Layer already exists for world: " + world.getName() + ", refreshing markers");
-                    // Store the existing layer reference
-                    SimpleLayer layer = (SimpleLayer) world.getLayerRegistry().get(LAYER_KEY);
-                    layers.put(world, layer);
-                    refreshMarkers(world);
+    /**
+     * Rescales the icons and rebuilds every published marker at the new size.
+     * Markers are recreated from their published fingerprint and tooltip, so
+     * neither the repository nor the tooltip template is involved.
+     * 
+     * @param iconSize Size of waystone icons in pixels
+     * @return Future completing once the resized markers were published
+     */
+    public CompletableFuture<Void> setIconSize(int iconSize) {
+        return pipeline.submit(() -> {
+                    markerFactory.setIconSize(platform, iconSize);
+                    return Set.copyOf(layers.keySet());
+                }, worldKeys -> {
+                    long start = System.nanoTime();
+                    List<LayerPlan> plans = new ArrayList<>();
+                    for (String worldKey : worldKeys) {
+                        Map<UUID, LayerPlan.PlannedMarker> upserts = new HashMap<>();
+                        reconciler.getPublished(worldKey).forEach((id, published) -> {
+                            Marker<?> marker = markerFactory.restoreMarker(id, published.fingerprint(),
+                                    WaystoneMarkerFactory.tooltipOf(published.marker()), worldKey);
+                            upserts.put(id, new LayerPlan.PlannedMarker(marker, published.fingerprint()));
+                        });
+                        if (!upserts.isEmpty()) {
+                            plans.add(new LayerPlan(worldKey, upserts, Set.of(), 0, upserts.size()));
+                        }
+                    }
+                    metrics.recordPhase(RefreshMetrics.Phase.BUILD, System.nanoTime() - start);
+                    return new RefreshOutput(null, plans, WarpChangeSet.empty());
+                }, this::publish)
+                .<Void>thenApply(ignored -> null)
+                .whenComplete((ignored, error) -> handleFailure("Error resizing waystone icons", error));
+    }
+
+    /**
+     * Applies new layer settings to the registered layers.
+     * Intervals, priorities and visibility are updated in place. Showing
+     * locked waystones adds the locked layers and builds only the locked
+     * markers; hiding them drops the locked layers. The public layers keep
+     * their markers either way.
+     * 
+     * @param publicSettings Settings of the layer showing unlocked waystones
+     * @param lockedSettings Settings of the layer showing locked waystones, or null to hide them
+     * @return Future completing once the locked markers were published or removed
+     */
+    public CompletableFuture<Void> setLayerSettings(LayerSettings publicSettings, LayerSettings lockedSettings) {
+        return pipeline.submit(() -> replaceLayers(publicSettings, lockedSettings), input -> {
+                    long start = System.nanoTime();
+                    List<LayerPlan> plans = new ArrayList<>();
+                    for (Map.Entry<UUID, String> world : input.worldKeys().entrySet()) {
+                        String worldKey = world.getValue();
+                        if (input.lockedShown() && input.snapshot() != null) {
+                            WarpSnapshot snapshot = input.snapshot();
+                            int[] locked = filterRows(snapshot.rows(world.getKey()), snapshot::isLocked);
+                            if (locked.length > 0) {
+                                plans.add(reconciler.planChanges(worldKey, snapshot, locked, List.of(),
+                                        markerBuilder(worldKey)));
+                            }
+                        } else if (input.lockedHidden()) {
+                            Set<UUID> locked = new HashSet<>();
+                            reconciler.getPublished(worldKey).forEach((id, published) -> {
+                                if (published.fingerprint().locked()) locked.add(id);
+                            });
+                            if (!locked.isEmpty()) {
+                                plans.add(new LayerPlan(worldKey, Map.of(), locked, 0, 0));
+                            }
+                        }
+                    }
+                    metrics.recordPhase(RefreshMetrics.Phase.BUILD, System.nanoTime() - start);
+                    return new RefreshOutput(null, plans, WarpChangeSet.empty());
+                }, this::publish)
+                .<Void>thenApply(ignored -> null)
+                .whenComplete((ignored, error) -> handleFailure("Error applying layer settings", error));
+    }
+
+    /**
+     * Snapshot stage of a layer settings change, runs on the main thread.
+     * 
+     * @return Input for the build stage
+     */
+    private LayerInput replaceLayers(LayerSettings publicSettings, LayerSettings lockedSettings) {
+        boolean wasShown = showLockedWaystones;
+        boolean shown = lockedSettings != null;
+        publicLayerSettings = publicSettings;
+        lockedLayerSettings = lockedSettings;
+        showLockedWaystones = shown;
+
+        for (MapPlatform.MapWorld world : platform.getWorlds()) {
+            WaystoneLayers worldLayers = layers.get(world.getName());
+            if (worldLayers == null) continue;
+
+            applyLayerSettings(worldLayers.getLayer(false), publicSettings);
+            if (shown && wasShown) {
+                applyLayerSettings(worldLayers.getLayer(true), lockedSettings);
+            } else if (shown) {
+                WaystoneLayers next = worldLayers.withLockedLayer(
+                        createLayer(LOCKED_LAYER_KEY, LOCKED_LAYER_LABEL, lockedSettings),
+                        createClusterer(worldLayers.getSpatialIndex()));
+                next.attach(world);
+                layers.put(world.getName(), next);
+            } else if (wasShown) {
+                if (world.getLayer(LOCKED_LAYER_KEY) == worldLayers.getLayer(true)) {
+                    world.unregisterLayer(LOCKED_LAYER_KEY);
                 }
+                layers.put(world.getName(), worldLayers.withLockedLayer(null, null));
             }
+        }
 
-            plugin.getLogger().info("Refreshed waystone markers for all worlds");
-        } catch (Exception e) {
-            plugin.getLogger().severe("Critical error during marker refresh: " + e.getMessage());
-            e.printStackTrace();
+        if (shown != wasShown) {
+            plugin.getLogger().info((shown ? "Showing" : "Hiding") + " locked waystones");
         }
+        return new LayerInput(lastSnapshot, worldKeysById(Set.of()), shown && !wasShown, wasShown && !shown);
     }
 
     /**
-     * Adds a waystone marker to a layer.
+     * Replaces the time slicing of full refreshes.
+     * A full refresh that is already running finishes with the previous settings.
      * 
-     * @param layer The layer to add the marker to
-     * @param warp The warp/waystone to create a marker for
+     * @param sliceSettings Time slicing of full refreshes, or null to snapshot in a single tick
      */
-    private void addWarpMarker(SimpleLayer layer, Warp warp) {
-        if (layer == null || warp == null) {
-            plugin.getLogger().warning("Cannot add marker: layer or warp is null");
-            return;
+    public void setSliceSettings(SliceSettings sliceSettings) {
+        slicer = sliceSettings == null ? null
+                : new TickSlicer(plugin, metrics, sliceSettings.tickBudgetMillis(), sliceSettings.backoffMillis());
+    }
+
+    /**
+     * @return Instrumentation of the refreshes run by this manager
+     */
+    public RefreshMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return The cache holding rendered tooltips
+     */
+    public TooltipCache getTooltipCache() {
+        return markerFactory.getTooltipCache();
+    }
+
+    /**
+     * @return The owner name cache, to be registered as a Bukkit listener
+     */
+    public OwnerNameCache getOwnerNameCache() {
+        return ownerNames;
+    }
+
+    /**
+     * Returns the spatial index of the waystones currently shown in a world.
+     * 
+     * @param worldName Name of the world
+     * @return The world's index, or null if the world has no layers
+     */
+    public WaystoneSpatialIndex getSpatialIndex(String worldName) {
+        WaystoneLayers worldLayers = layers.get(worldName);
+        return worldLayers == null ? null : worldLayers.getSpatialIndex();
+    }
+
+    /**
+     * Checks whether Pl3xMap's world registry is populated again after a reload.
+     * 
+     * @return true if the registry holds at least one world and every world that had a layer
+     */
+    public boolean isMapReady() {
+        Set<String> worldKeys = new HashSet<>();
+        for (MapPlatform.MapWorld world : platform.getWorlds()) {
+            worldKeys.add(world.getName());
         }
+        return !worldKeys.isEmpty() && worldKeys.containsAll(layers.keySet());
+    }
 
-        try {
-            Marker<?> marker = markerFactory.createMarker(warp);
-            layer.addMarker(marker);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to add marker for warp " + warp.getName() + ": " + e.getMessage());
+    /**
+     * Returns the snapshot that was last published to the layers.
+     * 
+     * @return The last snapshot, or null if no refresh has been published yet
+     */
+    public WarpSnapshot getLastSnapshot() {
+        return lastSnapshot;
+    }
+
+    /**
+     * Maps the Bukkit world UUID of every registered layer to its world key.
+     * Worlds that have no layer yet, such as worlds loaded after the last full
+     * refresh, get one as soon as they contain waystones.
+     * Resolved on the main thread so build stages never touch Bukkit state.
+     * 
+     * @param neededWorldIds UUIDs of the worlds that contain waystones
+     * @return World keys by Bukkit world UUID
+     */
+    private Map<UUID, String> worldKeysById(Collection<UUID> neededWorldIds) {
+        Map<UUID, String> worldKeys = new HashMap<>();
+        for (MapPlatform.MapWorld world : platform.getWorlds()) {
+            UUID worldId = world.getBukkitWorldId();
+            if (worldId == null) continue;
+
+            if (!layers.containsKey(world.getName()) && neededWorldIds.contains(worldId)
+                    && world.getLayer(LAYER_KEY) == null) {
+                registerLayer(world);
+            }
+            if (layers.containsKey(world.getName())) {
+                worldKeys.put(worldId, world.getName());
+            }
+        }
+        return worldKeys;
+    }
+
+    /**
+     * Resolves the Bukkit world UUIDs of the Pl3xMap worlds in a scope.
+     * 
+     * @param scope Worlds to resolve
+     * @return UUIDs of the worlds in the scope
+     */
+    private Set<UUID> worldIdsIn(WorldScope scope) {
+        Set<UUID> worldIds = new HashSet<>();
+        for (MapPlatform.MapWorld world : platform.getWorlds()) {
+            UUID worldId = world.getBukkitWorldId();
+            if (worldId != null && scope.contains(world.getName())) {
+                worldIds.add(worldId);
+            }
         }
+        return worldIds;
+    }
+
+    /**
+     * Selects the rows matching a condition.
+     * 
+     * @param rows Rows of a snapshot
+     * @param filter Condition a row must match
+     * @return The matching rows, in order
+     */
+    private static int[] filterRows(int[] rows, IntPredicate filter) {
+        int[] matching = new int[rows.length];
+        int count = 0;
+        for (int row : rows) {
+            if (filter.test(row)) {
+                matching[count++] = row;
+            }
+        }
+        return count == rows.length ? matching : Arrays.copyOf(matching, count);
+    }
+
+    /**
+     * Returns a builder for the markers of one world.
+     * A marker that fails to build is logged and skipped.
+     * 
+     * @param worldName Name of the world the waystones are in
+     * @return Builds a marker from a snapshot row
+     */
+    private MarkerReconciler.MarkerBuilder markerBuilder(String worldName) {
+        return (snapshot, row, fingerprint) -> {
+            try {
+                return markerFactory.createMarker(snapshot.id(row), fingerprint, snapshot.creationTime(row), worldName);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Failed to build marker for warp " + fingerprint.name() + ": "
+                        + e.getMessage());
+                return null;
+            }
+        };
+    }
+
+    private record FullInput(WarpSnapshot.Builder capture, Map<String, UUID> worldIds, long captureNanos) {
+    }
+
+    private record CheckInput(WarpSnapshot.Builder capture, WarpSnapshot previous, Set<UUID> worldIds,
+                              Map<UUID, String> worldKeys, long captureNanos) {
+    }
+
+    private record ChangeInput(WarpSnapshot current, Set<UUID> warpIds, WarpChangeSet changes,
+                               Map<UUID, String> worldKeys) {
+    }
+
+    private record OwnerInput(WarpSnapshot snapshot, Set<UUID> ownerIds, Map<UUID, String> worldKeys) {
+    }
+
+    private record LayerInput(WarpSnapshot snapshot, Map<UUID, String> worldKeys, boolean lockedShown,
+                              boolean lockedHidden) {
+    }
+
+    private record RefreshOutput(WarpSnapshot snapshot, List<LayerPlan> plans, WarpChangeSet changes) {
+    }
+
+    /**
+     * Settings for grouping nearby waystones into cluster markers.
+     * 
+     * @param cellSize Edge length of a cluster cell in blocks
+     * @param minSize Minimum number of waystones in a cell to form a cluster
+     */
+    public record ClusterSettings(int cellSize, int minSize) {
+    }
+
+    /**
+     * Settings of the density heatmap layer.
+     * 
+     * @param cellSize Edge length of a heatmap cell in blocks
+     * @param layer Update interval, priority and visibility of the heatmap layer
+     */
+    public record HeatmapSettings(int cellSize, LayerSettings layer) {
+    }
+
+    /**
+     * Settings of one waystone layer.
+     * 
+     * @param updateInterval How often map viewers fetch the layer in seconds
+     * @param priority Position of the layer in the layer controls
+     * @param defaultHidden Whether the layer starts hidden until a viewer enables it
+     */
+    public record LayerSettings(int updateInterval, int priority, boolean defaultHidden) {
+    }
+
+    /**
+     * Settings for spreading the snapshot of a full refresh over several ticks.
+     * 
+     * @param tickBudgetMillis Main-thread time the snapshot may use per tick in milliseconds
+     * @param backoffMillis Average tick time above which the snapshot pauses in milliseconds (0 = never pause)
+     */
+    public record SliceSettings(double tickBudgetMillis, double backoffMillis) {
     }
 }
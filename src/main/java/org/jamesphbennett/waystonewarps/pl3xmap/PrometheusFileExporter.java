@@ -0,0 +1,104 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Periodically writes refresh metrics to a Prometheus text-format file.
+ * 
+ * The file lives in the plugin data folder and is meant to be picked up by
+ * node_exporter's textfile collector or a similar scraper. It is written to a
+ * temporary file first and moved into place, so readers never see partial output.
+ * 
+ * Thread-safe: Writes run on an async scheduler thread and are serialized on
+ * the exporter instance, so the final write on stop never races a periodic
+ * one for the temporary file; metrics are read through their thread-safe accessors.
+ */
+public class PrometheusFileExporter {
+    private final Plugin plugin;
+    private final RefreshMetrics metrics;
+    private final String fileName;
+    private final int intervalSeconds;
+
+    private BukkitTask task;
+
+    /**
+     * Creates a new exporter.
+     * 
+     * @param plugin The plugin instance for logging and scheduling
+     * @param metrics The metrics to export
+     * @param fileName Name of the file in the plugin data folder
+     * @param intervalSeconds Interval between writes in seconds (must be positive)
+     * @throws IllegalArgumentException if any parameter is null or interval is invalid
+     */
+    public PrometheusFileExporter(Plugin plugin, RefreshMetrics metrics, String fileName, int intervalSeconds) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
+        }
+        if (fileName == null || fileName.isBlank()) {
+            throw new IllegalArgumentException("File name cannot be null");
+        }
+        if (intervalSeconds <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.fileName = fileName;
+        this.intervalSeconds = intervalSeconds;
+    }
+
+    /**
+     * Starts writing the metrics file periodically.
+     */
+    public void start() {
+        long intervalTicks = intervalSeconds * 20L;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(
+                plugin,
+                this::write,
+                intervalTicks,
+                intervalTicks
+        );
+        plugin.getLogger().info("Writing Prometheus metrics to " + fileName + " (every " + intervalSeconds + "s)");
+    }
+
+    /**
+     * Stops writing and writes the final state once. Safe to call multiple times.
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+            write();
+        }
+    }
+
+    /**
+     * Writes the current metrics to the file.
+     */
+    private synchronized void write() {
+        try {
+            File dataFolder = plugin.getDataFolder();
+            if (!dataFolder.exists() && !dataFolder.mkdirs()) {
+                plugin.getLogger().warning("Could not create data folder for metrics file");
+                return;
+            }
+
+            Path target = new File(dataFolder, fileName).toPath();
+            Path temp = new File(dataFolder, fileName + ".tmp").toPath();
+            Files.writeString(temp, metrics.toPrometheus(), StandardCharsets.UTF_8);
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to write metrics file: " + e.getMessage());
+        }
+    }
+}
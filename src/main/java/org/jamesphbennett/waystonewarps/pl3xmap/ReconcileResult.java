@@ -0,0 +1,24 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+/**
+ * Outcome of reconciling a layer against the current waystone data.
+ * 
+ * @param added Number of markers added to the layer
+ * @param updated Number of markers replaced because their waystone changed
+ * @param removed Number of markers removed from the layer
+ * @param total Number of markers in the layer after reconciliation
+ */
+public record ReconcileResult(int added, int updated, int removed, int total) {
+
+    /**
+     * @return true if the layer was modified in any way
+     */
+    public boolean hasChanges() {
+        return added > 0 || updated > 0 || removed > 0;
+    }
+
+    @Override
+    public String toString() {
+        return "+" + added + " ~" + updated + " -" + removed + " (" + total + " total)";
+    }
+}
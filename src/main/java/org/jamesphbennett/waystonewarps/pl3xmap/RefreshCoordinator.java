@@ -0,0 +1,311 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single-flight, debounced front door for marker refreshes.
+ * 
+ * Refresh requests from the periodic task, the reload command, the
+ * Pl3xMap reload listener and the waystone event listener are merged so that
+ * at most one refresh is running and at most one is pending. Requests arriving
+ * within the debounce window join the pending refresh; a pending full refresh
+ * absorbs pending change checks and targeted updates, the world scopes of merged
+ * change checks are combined, and the ids of merged targeted updates are collected.
+ * Requests from the reload command and the Pl3xMap reload listener skip the
+ * debounce window, since someone is waiting for them, but still join a pending
+ * refresh and wait for a running one.
+ * Every caller receives a future that completes when the refresh covering
+ * its request has been published.
+ * 
+ * Thread-safe: Requests may be made from any thread.
+ */
+public class RefreshCoordinator {
+    /**
+     * Kind of refresh requested, ordered from weakest to strongest.
+     */
+    public enum Kind {
+        /** Update only waystones that changed since the last refresh */
+        CHANGES,
+        /** Re-register layers and reconcile every world */
+        FULL
+    }
+
+    private final Plugin plugin;
+    private final Pl3xmapLayerManager layerManager;
+    private volatile long debounceTicks;
+
+    private boolean running;
+    private boolean fireScheduled;
+    private long fireGeneration;
+    private Kind pendingKind;
+    private WorldScope pendingScope;
+    private final Set<UUID> pendingWarpIds = new HashSet<>();
+    private final Set<UUID> pendingOwnerIds = new HashSet<>();
+    private boolean pendingImmediate;
+    private CompletableFuture<Void> pendingFuture;
+
+    /**
+     * Creates a new refresh coordinator.
+     * 
+     * @param plugin The plugin instance for scheduling
+     * @param layerManager The layer manager performing the refreshes
+     * @param debounceTicks Window in ticks during which requests are merged (0 = no delay)
+     * @throws IllegalArgumentException if any parameter is null or debounceTicks is negative
+     */
+    public RefreshCoordinator(Plugin plugin, Pl3xmapLayerManager layerManager, long debounceTicks) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (layerManager == null) {
+            throw new IllegalArgumentException("Layer manager cannot be null");
+        }
+        if (debounceTicks < 0) {
+            throw new IllegalArgumentException("Debounce cannot be negative");
+        }
+
+        this.plugin = plugin;
+        this.layerManager = layerManager;
+        this.debounceTicks = debounceTicks;
+    }
+
+    /**
+     * Changes the debounce window; a refresh that is already scheduled keeps its delay.
+     * 
+     * @param debounceTicks Window in ticks during which requests are merged (0 = no delay)
+     * @throws IllegalArgumentException if debounceTicks is negative
+     */
+    public void setDebounceTicks(long debounceTicks) {
+        if (debounceTicks < 0) {
+            throw new IllegalArgumentException("Debounce cannot be negative");
+        }
+
+        this.debounceTicks = debounceTicks;
+    }
+
+    /**
+     * Requests a refresh, merging it with any refresh that is already pending.
+     * 
+     * @param kind Kind of refresh needed
+     * @param source What triggered the request, for the refresh metrics
+     * @return Future completing when a refresh covering this request has been published
+     */
+    public CompletableFuture<Void> request(Kind kind, RefreshMetrics.Source source) {
+        return request(kind, source, WorldScope.all());
+    }
+
+    /**
+     * Requests a refresh of some worlds, merging it with any refresh that is already pending.
+     * The scope only narrows change checks; a full refresh always covers every world.
+     * 
+     * @param kind Kind of refresh needed
+     * @param source What triggered the request, for the refresh metrics
+     * @param scope Worlds to check for changes
+     * @return Future completing when a refresh covering this request has been published
+     */
+    public CompletableFuture<Void> request(Kind kind, RefreshMetrics.Source source, WorldScope scope) {
+        layerManager.getMetrics().recordTrigger(source);
+
+        CompletableFuture<Void> future;
+        boolean schedule = false;
+
+        synchronized (this) {
+            if (pendingFuture == null) {
+                pendingFuture = new CompletableFuture<>();
+            }
+            if (pendingKind == null || kind.compareTo(pendingKind) > 0) {
+                pendingKind = kind;
+            }
+            pendingScope = pendingScope == null ? scope : pendingScope.union(scope);
+            future = pendingFuture;
+
+            // A running refresh schedules the pending one when it finishes
+            if (isImmediate(source)) {
+                pendingImmediate = true;
+                schedule = !running;
+            } else if (!running && !fireScheduled) {
+                schedule = true;
+            }
+            if (schedule) {
+                fireScheduled = true;
+            }
+        }
+
+        if (schedule) {
+            scheduleFire();
+        }
+        return future;
+    }
+
+    /**
+     * Requests a targeted update of some waystones, merging it with any refresh that is already pending.
+     * 
+     * @param warpIds Ids of waystones that may have changed or disappeared
+     * @param ownerIds Owners whose waystones may have been created or changed
+     * @param source What triggered the request, for the refresh metrics
+     * @return Future completing when a refresh covering this request has been published
+     */
+    public CompletableFuture<Void> requestWarps(Set<UUID> warpIds, Set<UUID> ownerIds, RefreshMetrics.Source source) {
+        layerManager.getMetrics().recordTrigger(source);
+
+        CompletableFuture<Void> future;
+        boolean schedule = false;
+
+        synchronized (this) {
+            if (pendingFuture == null) {
+                pendingFuture = new CompletableFuture<>();
+            }
+            pendingWarpIds.addAll(warpIds);
+            pendingOwnerIds.addAll(ownerIds);
+            future = pendingFuture;
+
+            if (!running && !fireScheduled) {
+                fireScheduled = true;
+                schedule = true;
+            }
+        }
+
+        if (schedule) {
+            scheduleFire();
+        }
+        return future;
+    }
+
+    /**
+     * @param source What triggered a request
+     * @return true if requests from the source should not wait for the debounce window
+     */
+    private static boolean isImmediate(RefreshMetrics.Source source) {
+        return source == RefreshMetrics.Source.COMMAND || source == RefreshMetrics.Source.RELOAD_LISTENER;
+    }
+
+    /**
+     * Starts the pending refresh once the debounce window has passed,
+     * or right away if the pending refresh was requested by a command or reload.
+     * Each start supersedes the delayed starts scheduled before it: when a
+     * command or reload fires early, the earlier delayed start does nothing,
+     * even if a new refresh is pending by then.
+     */
+    private void scheduleFire() {
+        if (!plugin.isEnabled()) {
+            failPending(new IllegalStateException("Plugin is disabled"));
+            return;
+        }
+
+        long delay;
+        long generation;
+        synchronized (this) {
+            delay = pendingImmediate ? 0 : debounceTicks;
+            generation = ++fireGeneration;
+        }
+        if (delay == 0) {
+            fire(generation);
+        } else {
+            plugin.getServer().getScheduler().runTaskLater(plugin, () -> fire(generation), delay);
+        }
+    }
+
+    /**
+     * Runs the pending refresh and chains the next one when it completes.
+     * 
+     * @param generation Start generation assigned when the start was scheduled
+     */
+    private void fire(long generation) {
+        Kind kind;
+        WorldScope scope;
+        Set<UUID> warpIds;
+        Set<UUID> ownerIds;
+        CompletableFuture<Void> future;
+
+        synchronized (this) {
+            // A later start superseded this one
+            if (generation != fireGeneration) {
+                return;
+            }
+
+            fireScheduled = false;
+            if (running || pendingFuture == null) {
+                return;
+            }
+
+            running = true;
+            kind = pendingKind;
+            scope = pendingScope;
+            warpIds = new HashSet<>(pendingWarpIds);
+            ownerIds = new HashSet<>(pendingOwnerIds);
+            future = pendingFuture;
+            pendingKind = null;
+            pendingScope = null;
+            pendingImmediate = false;
+            pendingWarpIds.clear();
+            pendingOwnerIds.clear();
+            pendingFuture = null;
+        }
+
+        CompletableFuture<Void> refresh;
+        try {
+            if (kind == Kind.FULL) {
+                // A full refresh recaptures every waystone, targeted ids included
+                refresh = layerManager.refreshAllMarkers();
+            } else {
+                // The pipeline runs the change check before the targeted update
+                CompletableFuture<?> check = kind == Kind.CHANGES
+                        ? layerManager.refreshChangedMarkers(scope)
+                        : CompletableFuture.completedFuture(null);
+                CompletableFuture<?> update = warpIds.isEmpty() && ownerIds.isEmpty()
+                        ? CompletableFuture.completedFuture(null)
+                        : layerManager.refreshWarps(warpIds, ownerIds);
+                refresh = CompletableFuture.allOf(check, update);
+            }
+        } catch (Exception e) {
+            refresh = CompletableFuture.failedFuture(e);
+        }
+
+        refresh.whenComplete((ignored, error) -> {
+            if (error == null) {
+                future.complete(null);
+            } else {
+                future.completeExceptionally(error);
+            }
+
+            boolean next;
+            synchronized (this) {
+                running = false;
+                next = pendingFuture != null && !fireScheduled;
+                if (next) {
+                    fireScheduled = true;
+                }
+            }
+
+            if (next) {
+                scheduleFire();
+            }
+        });
+    }
+
+    /**
+     * Fails the pending request, used when refreshes can no longer run.
+     */
+    private void failPending(Throwable error) {
+        CompletableFuture<Void> future;
+        synchronized (this) {
+            fireScheduled = false;
+            fireGeneration++;
+            future = pendingFuture;
+            pendingFuture = null;
+            pendingKind = null;
+            pendingScope = null;
+            pendingImmediate = false;
+            pendingWarpIds.clear();
+            pendingOwnerIds.clear();
+        }
+
+        if (future != null) {
+            future.completeExceptionally(error);
+        }
+    }
+}
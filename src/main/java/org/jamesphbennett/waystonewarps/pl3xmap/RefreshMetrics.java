@@ -0,0 +1,314 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Built-in instrumentation of marker refreshes.
+ * 
+ * Responsibilities:
+ * - Record a latency histogram per refresh phase (snapshot, diff, build, publish)
+ * - Track the main-thread time consumed by refreshes
+ * - Count refreshes triggered per source and completed/failed pipeline runs
+ * - Track the number of markers published per world
+ * - Render everything in the Prometheus text exposition format
+ * 
+ * Full refreshes diff while they build, so their planning time is counted as
+ * build; the diff phase covers the separate change detection of incremental refreshes.
+ * 
+ * Thread-safe: All counters may be updated and read from any thread.
+ */
+public class RefreshMetrics {
+    /**
+     * Phases of a refresh run.
+     */
+    public enum Phase {
+        SNAPSHOT, DIFF, BUILD, PUBLISH;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    /**
+     * What triggered a refresh.
+     */
+    public enum Source {
+        TIMER, COMMAND, RELOAD_LISTENER, EVENTS;
+
+        String label() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private final Map<Phase, LatencyHistogram> phases = new EnumMap<>(Phase.class);
+    private final Map<Source, LongAdder> triggers = new EnumMap<>(Source.class);
+    private final Map<String, Integer> markersByWorld = new ConcurrentHashMap<>();
+    private final LongAdder mainThreadNanos = new LongAdder();
+    private final LongAdder completedRuns = new LongAdder();
+    private final LongAdder failedRuns = new LongAdder();
+
+    /**
+     * Creates empty metrics.
+     */
+    public RefreshMetrics() {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, new LatencyHistogram());
+        }
+        for (Source source : Source.values()) {
+            triggers.put(source, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs a piece of work and records its duration under a phase.
+     * 
+     * @param phase Phase the work belongs to
+     * @param work The work to run
+     * @return The result of the work
+     */
+    public <T> T time(Phase phase, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            recordPhase(phase, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Records the duration of a phase.
+     * 
+     * @param phase Phase that ran
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordPhase(Phase phase, long nanos) {
+        phases.get(phase).record(nanos);
+    }
+
+    /**
+     * Records time spent on the main thread on behalf of a refresh.
+     * 
+     * @param nanos Duration in nanoseconds
+     */
+    public void recordMainThread(long nanos) {
+        mainThreadNanos.add(nanos);
+    }
+
+    /**
+     * Records that a refresh was triggered.
+     * 
+     * @param source What triggered it
+     */
+    public void recordTrigger(Source source) {
+        triggers.get(source).increment();
+    }
+
+    /**
+     * Records the outcome of a pipeline run.
+     * 
+     * @param success Whether the run published its result
+     */
+    public void recordRun(boolean success) {
+        (success ? completedRuns : failedRuns).increment();
+    }
+
+    /**
+     * Records the number of markers shown in a world.
+     * 
+     * @param worldName Name of the world
+     * @param markers Number of markers on the world's layer
+     */
+    public void recordMarkers(String worldName, int markers) {
+        markersByWorld.put(worldName, markers);
+    }
+
+    /**
+     * Forgets the marker count of a world whose layer is gone.
+     * 
+     * @param worldName Name of the world
+     */
+    public void forgetWorld(String worldName) {
+        markersByWorld.remove(worldName);
+    }
+
+    /**
+     * @param phase The phase
+     * @return Summary of the phase's recorded durations
+     */
+    public PhaseStats getPhaseStats(Phase phase) {
+        return phases.get(phase).stats();
+    }
+
+    /**
+     * @param source The trigger source
+     * @return Number of refreshes triggered by the source
+     */
+    public long getTriggers(Source source) {
+        return triggers.get(source).sum();
+    }
+
+    /**
+     * @return Marker counts by world name, sorted by name
+     */
+    public Map<String, Integer> getMarkersByWorld() {
+        return Collections.unmodifiableMap(new TreeMap<>(markersByWorld));
+    }
+
+    /**
+     * @return Total main-thread time consumed by refreshes, in nanoseconds
+     */
+    public long getMainThreadNanos() {
+        return mainThreadNanos.sum();
+    }
+
+    /**
+     * @return Number of pipeline runs that published their result
+     */
+    public long getCompletedRuns() {
+        return completedRuns.sum();
+    }
+
+    /**
+     * @return Number of pipeline runs that failed
+     */
+    public long getFailedRuns() {
+        return failedRuns.sum();
+    }
+
+    /**
+     * Renders all metrics in the Prometheus text exposition format.
+     * 
+     * @return The metrics text
+     */
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder(2048);
+
+        out.append("# HELP waystones_refresh_phase_seconds Duration of marker refresh phases.\n")
+           .append("# TYPE waystones_refresh_phase_seconds histogram\n");
+        for (Phase phase : Phase.values()) {
+            phases.get(phase).appendPrometheus(out, "waystones_refresh_phase_seconds", phase.label());
+        }
+
+        out.append("# HELP waystones_refresh_triggers_total Refreshes triggered per source.\n")
+           .append("# TYPE waystones_refresh_triggers_total counter\n");
+        for (Source source : Source.values()) {
+            out.append("waystones_refresh_triggers_total{source=\"").append(source.label()).append("\"} ")
+               .append(getTriggers(source)).append('\n');
+        }
+
+        out.append("# HELP waystones_refresh_runs_total Completed marker pipeline runs per outcome.\n")
+           .append("# TYPE waystones_refresh_runs_total counter\n")
+           .append("waystones_refresh_runs_total{outcome=\"success\"} ").append(getCompletedRuns()).append('\n')
+           .append("waystones_refresh_runs_total{outcome=\"failure\"} ").append(getFailedRuns()).append('\n');
+
+        out.append("# HELP waystones_main_thread_seconds_total Main-thread time consumed by refreshes.\n")
+           .append("# TYPE waystones_main_thread_seconds_total counter\n")
+           .append("waystones_main_thread_seconds_total ").append(seconds(getMainThreadNanos())).append('\n');
+
+        out.append("# HELP waystones_markers Markers currently shown per world.\n")
+           .append("# TYPE waystones_markers gauge\n");
+        getMarkersByWorld().forEach((world, markers) ->
+                out.append("waystones_markers{world=\"").append(escapeLabel(world)).append("\"} ")
+                   .append(markers).append('\n'));
+
+        return out.toString();
+    }
+
+    private static String seconds(long nanos) {
+        return Double.toString(nanos / 1_000_000_000.0);
+    }
+
+    private static String escapeLabel(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Summary of a phase's recorded durations.
+     * 
+     * @param count Number of recorded durations
+     * @param averageMillis Average duration in milliseconds
+     * @param p50Millis Upper bound of the median's histogram bucket, in milliseconds
+     * @param p95Millis Upper bound of the 95th percentile's histogram bucket, in milliseconds
+     * @param maxMillis Longest recorded duration in milliseconds
+     */
+    public record PhaseStats(long count, double averageMillis, double p50Millis, double p95Millis,
+                             double maxMillis) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "n=%d avg=%.2fms p50<=%.0fms p95<=%.0fms max=%.2fms",
+                    count, averageMillis, p50Millis, p95Millis, maxMillis);
+        }
+    }
+
+    /**
+     * Fixed-bucket latency histogram.
+     */
+    private static final class LatencyHistogram {
+        // Bucket upper bounds in milliseconds; the last bucket is unbounded
+        private static final double[] BOUNDS_MILLIS = {1, 2.5, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private volatile long maxNanos;
+
+        void record(long nanos) {
+            double millis = nanos / 1_000_000.0;
+            int bucket = 0;
+            while (bucket < BOUNDS_MILLIS.length && millis > BOUNDS_MILLIS[bucket]) {
+                bucket++;
+            }
+            buckets.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+            if (nanos > maxNanos) {
+                synchronized (this) {
+                    maxNanos = Math.max(maxNanos, nanos);
+                }
+            }
+        }
+
+        PhaseStats stats() {
+            long total = count.sum();
+            if (total == 0) {
+                return new PhaseStats(0, 0, 0, 0, 0);
+            }
+            return new PhaseStats(total, sumNanos.sum() / 1_000_000.0 / total,
+                    percentile(total, 0.50), percentile(total, 0.95), maxNanos / 1_000_000.0);
+        }
+
+        private double percentile(long total, double quantile) {
+            long rank = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) {
+                    return i < BOUNDS_MILLIS.length ? BOUNDS_MILLIS[i] : maxNanos / 1_000_000.0;
+                }
+            }
+            return maxNanos / 1_000_000.0;
+        }
+
+        void appendPrometheus(StringBuilder out, String name, String phase) {
+            long cumulative = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                cumulative += buckets.get(i);
+                String le = i < BOUNDS_MILLIS.length ? Double.toString(BOUNDS_MILLIS[i] / 1000.0) : "+Inf";
+                out.append(name).append("_bucket{phase=\"").append(phase).append("\",le=\"").append(le)
+                   .append("\"} ").append(cumulative).append('\n');
+            }
+            out.append(name).append("_sum{phase=\"").append(phase).append("\"} ")
+               .append(seconds(sumNanos.sum())).append('\n');
+            out.append(name).append("_count{phase=\"").append(phase).append("\"} ")
+               .append(cumulative).append('\n');
+        }
+    }
+}
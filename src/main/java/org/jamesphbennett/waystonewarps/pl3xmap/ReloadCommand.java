@@ -11,7 +11,8 @@ import org.bukkit.plugin.Plugin;
  * Provides the /waystones-reload-map command for server operators
  * to manually refresh all waystone markers on the map.
  * 
- * Executes asynchronously to prevent blocking the main server thread.
+ * Markers are built off the main thread by the layer manager's build pipeline;
+ * the sender is notified once the refreshed markers are published.
  * 
  * Permission: waystonewarps.pl3xmap.reload
  */
@@ -23,30 +24,30 @@ public class ReloadCommand implements CommandExecutor {
     private static final String MSG_ERROR_PREFIX = "§cError refreshing markers: ";
     
     private final Plugin plugin;
-    private final Pl3xmapLayerManager layerManager;
+    private final RefreshCoordinator refreshCoordinator;
 
     /**
      * Creates a new reload command executor.
      * 
      * @param plugin The plugin instance for logging and scheduling
-     * @param layerManager The layer manager to refresh
+     * @param refreshCoordinator The coordinator that runs the refresh
      * @throws IllegalArgumentException if any parameter is null
      */
-    public ReloadCommand(Plugin plugin, Pl3xmapLayerManager layerManager) {
+    public ReloadCommand(Plugin plugin, RefreshCoordinator refreshCoordinator) {
         if (plugin == null) {
             throw new IllegalArgumentException("Plugin cannot be null");
         }
-        if (layerManager == null) {
-            throw new IllegalArgumentException("Layer manager cannot be null");
+        if (refreshCoordinator == null) {
+            throw new IllegalArgumentException("Refresh coordinator cannot be null");
         }
         
         this.plugin = plugin;
-        this.layerManager = layerManager;
+        this.refreshCoordinator = refreshCoordinator;
     }
 
     /**
      * Executes the reload command.
-     * Checks permissions, then schedules an asynchronous refresh of all markers.
+     * Checks permissions, then requests a refresh of all markers.
      * 
      * @param sender The command sender
      * @param command The command object
@@ -64,17 +65,18 @@ public class ReloadCommand implements CommandExecutor {
 
         sender.sendMessage(MSG_RELOADING);
 
-        // Execute refresh asynchronously to avoid blocking main thread
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                layerManager.refreshAllMarkers();
-                sender.sendMessage(MSG_SUCCESS);
-            } catch (Exception e) {
-                sender.sendMessage(MSG_ERROR_PREFIX + e.getMessage());
-                plugin.getLogger().warning("Failed to refresh markers via command: " + e.getMessage());
-                e.printStackTrace();
-            }
-        });
+        // Markers are built off the main thread and published once ready
+        refreshCoordinator.request(RefreshCoordinator.Kind.FULL, RefreshMetrics.Source.COMMAND)
+                .whenComplete((ignored, error) -> {
+                    if (error == null) {
+                        sender.sendMessage(MSG_SUCCESS);
+                        return;
+                    }
+
+                    Throwable cause = error.getCause() != null ? error.getCause() : error;
+                    sender.sendMessage(MSG_ERROR_PREFIX + cause.getMessage());
+                    plugin.getLogger().warning("Failed to refresh markers via command: " + cause.getMessage());
+                });
 
         return true;
     }
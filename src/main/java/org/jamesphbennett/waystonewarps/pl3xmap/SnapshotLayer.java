@@ -0,0 +1,69 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.layer.Layer;
+import net.pl3x.map.core.markers.marker.Marker;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.Supplier;
+
+/**
+ * Copy-on-write Pl3xMap layer serving its markers from an immutable array.
+ * 
+ * Unlike SimpleLayer, markers are never mutated one by one. A refresh builds
+ * the complete next marker array and publishes it with a single volatile
+ * write, so Pl3xMap's marker serialization never observes a half-updated
+ * layer and reads take no locks.
+ * 
+ * Thread-safe: Reads are lock-free; publishes should come from one thread at a time.
+ */
+public class SnapshotLayer extends Layer {
+    private static final Marker<?>[] EMPTY = new Marker<?>[0];
+
+    private volatile Marker<?>[] markers;
+
+    /**
+     * Creates a new empty snapshot layer.
+     * 
+     * @param key Unique layer key
+     * @param labelSupplier Supplies the label shown in the layer controls
+     */
+    public SnapshotLayer(String key, Supplier<String> labelSupplier) {
+        super(key, labelSupplier);
+        this.markers = EMPTY;
+    }
+
+    /**
+     * Returns the currently published markers.
+     * 
+     * @return Unmodifiable view of the published marker array
+     */
+    @Override
+    public Collection<Marker<?>> getMarkers() {
+        return Collections.unmodifiableList(Arrays.asList(markers));
+    }
+
+    /**
+     * Replaces all markers with a single volatile write.
+     * 
+     * @param next The complete new marker set
+     */
+    public void publish(Collection<Marker<?>> next) {
+        markers = next.isEmpty() ? EMPTY : next.toArray(new Marker<?>[0]);
+    }
+
+    /**
+     * Removes all markers.
+     */
+    public void clear() {
+        markers = EMPTY;
+    }
+
+    /**
+     * @return Number of published markers
+     */
+    public int size() {
+        return markers.length;
+    }
+}
@@ -0,0 +1,181 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Spreads main-thread work over several ticks within a per-tick time budget.
+ * 
+ * Responsibilities:
+ * - Process a list in slices on the main thread, one slice per tick
+ * - Stop each slice once the tick budget is used up
+ * - Skip ticks while the server's average tick time is above the back-off threshold
+ * - Account the time spent as main-thread time in the refresh metrics
+ * 
+ * A run never backs off for more than {@link #MAX_BACKOFF_TICKS} ticks in a row,
+ * so a permanently lagging server still finishes the work, just slowly.
+ * 
+ * Thread-safe: Runs may be started from any thread; slices always run on the main thread.
+ */
+public class TickSlicer {
+    private static final int CHECK_INTERVAL = 64; // items between clock reads
+    private static final int MAX_BACKOFF_TICKS = 100;
+
+    private final Plugin plugin;
+    private final RefreshMetrics metrics;
+    private final long budgetNanos;
+    private final double backoffMillis;
+    private volatile boolean shutdown;
+
+    /**
+     * Creates a new tick slicer.
+     * 
+     * @param plugin The plugin instance for scheduling
+     * @param metrics Metrics receiving the main-thread time of every slice
+     * @param budgetMillis Main-thread time a run may use per tick in milliseconds (must be positive)
+     * @param backoffMillis Average tick time above which runs pause in milliseconds (0 = never pause)
+     * @throws IllegalArgumentException if any parameter is null or out of range
+     */
+    public TickSlicer(Plugin plugin, RefreshMetrics metrics, double budgetMillis, double backoffMillis) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics cannot be null");
+        }
+        if (budgetMillis <= 0) {
+            throw new IllegalArgumentException("Tick budget must be positive");
+        }
+        if (backoffMillis < 0) {
+            throw new IllegalArgumentException("Back-off threshold cannot be negative");
+        }
+
+        this.plugin = plugin;
+        this.metrics = metrics;
+        this.budgetNanos = (long) (budgetMillis * 1_000_000L);
+        this.backoffMillis = backoffMillis;
+    }
+
+    /**
+     * Applies an action to every item on the main thread, a slice per tick.
+     * The first slice runs on the next tick.
+     * 
+     * @param items Items to process, in order
+     * @param action Action to apply to each item
+     * @return Future completing with the run's statistics once every item was processed
+     */
+    public <T> CompletableFuture<Report> forEach(List<T> items, Consumer<T> action) {
+        if (shutdown || !plugin.isEnabled()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Plugin is disabled"));
+        }
+
+        Run<T> run = new Run<>(items, action);
+        run.task = plugin.getServer().getScheduler().runTaskTimer(plugin, run::tick, 1L, 1L);
+        return run.future;
+    }
+
+    /**
+     * Fails all unfinished runs on their next tick.
+     */
+    public void shutdown() {
+        shutdown = true;
+    }
+
+    /**
+     * Statistics of a finished run.
+     * 
+     * @param items Number of items processed
+     * @param ticks Ticks in which a slice ran
+     * @param backedOffTicks Ticks skipped because the server was lagging
+     * @param busyNanos Main-thread time spent on the slices
+     */
+    public record Report(int items, int ticks, int backedOffTicks, long busyNanos) {
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d item(s) in %d tick(s), %d backed off, %.1fms main thread",
+                    items, ticks, backedOffTicks, busyNanos / 1_000_000.0);
+        }
+    }
+
+    /**
+     * A list being worked through, one tick at a time.
+     */
+    private final class Run<T> {
+        private final List<T> items;
+        private final Consumer<T> action;
+        private final CompletableFuture<Report> future = new CompletableFuture<>();
+        private volatile BukkitTask task;
+        private int next;
+        private int ticks;
+        private int backedOffTicks;
+        private int backoffStreak;
+        private long busyNanos;
+
+        Run(List<T> items, Consumer<T> action) {
+            this.items = items;
+            this.action = action;
+        }
+
+        void tick() {
+            if (task == null) {
+                // Scheduled from another thread and not handed over yet
+                return;
+            }
+            if (future.isDone()) {
+                task.cancel();
+                return;
+            }
+            if (shutdown) {
+                finish(new RejectedExecutionException("Tick slicer is shut down"));
+                return;
+            }
+
+            if (backoffMillis > 0 && backoffStreak < MAX_BACKOFF_TICKS
+                    && Bukkit.getAverageTickTime() > backoffMillis) {
+                backoffStreak++;
+                backedOffTicks++;
+                return;
+            }
+            backoffStreak = 0;
+
+            long start = System.nanoTime();
+            try {
+                int size = items.size();
+                while (next < size) {
+                    action.accept(items.get(next++));
+                    if (next % CHECK_INTERVAL == 0 && System.nanoTime() - start >= budgetNanos) {
+                        break;
+                    }
+                }
+            } catch (Exception e) {
+                finish(e);
+                return;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                busyNanos += elapsed;
+                ticks++;
+                metrics.recordMainThread(elapsed);
+            }
+
+            if (next >= items.size()) {
+                finish(null);
+            }
+        }
+
+        private void finish(Exception error) {
+            task.cancel();
+            if (error == null) {
+                future.complete(new Report(items.size(), ticks, backedOffTicks, busyNanos));
+            } else {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+}
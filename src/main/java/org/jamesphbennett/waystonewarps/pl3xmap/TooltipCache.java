@@ -0,0 +1,146 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded LRU cache of rendered tooltip HTML.
+ * 
+ * Entries are keyed by warp id and validated against a content fingerprint:
+ * a lookup with a different fingerprint than the cached one is a miss and
+ * replaces the stale entry, so changed waystones never serve outdated HTML.
+ * When the cache is full the least recently used entry is evicted.
+ * 
+ * Thread-safe: All access is synchronized on the cache instance.
+ */
+public class TooltipCache {
+    private final int capacity;
+    private final LinkedHashMap<UUID, Entry> entries;
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+    private final AtomicLong evictions;
+
+    /**
+     * Creates a new tooltip cache.
+     * 
+     * @param capacity Maximum number of cached tooltips (0 disables caching)
+     * @throws IllegalArgumentException if capacity is negative
+     */
+    public TooltipCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Capacity cannot be negative");
+        }
+
+        this.capacity = capacity;
+        this.hits = new AtomicLong();
+        this.misses = new AtomicLong();
+        this.evictions = new AtomicLong();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Entry> eldest) {
+                if (size() > TooltipCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached tooltip for a waystone, rendering it on a miss.
+     * 
+     * @param warpId Id of the waystone
+     * @param fingerprint Content fingerprint the tooltip was rendered from
+     * @param renderer Renders the tooltip when it is missing or stale
+     * @return The tooltip HTML
+     */
+    public String get(UUID warpId, Object fingerprint, Supplier<String> renderer) {
+        if (capacity == 0) {
+            misses.incrementAndGet();
+            return renderer.get();
+        }
+
+        synchronized (this) {
+            Entry entry = entries.get(warpId);
+            if (entry != null && entry.fingerprint.equals(fingerprint)) {
+                hits.incrementAndGet();
+                return entry.html;
+            }
+        }
+
+        // Render outside the lock; concurrent renders of the same warp are harmless
+        misses.incrementAndGet();
+        String html = renderer.get();
+
+        synchronized (this) {
+            entries.put(warpId, new Entry(fingerprint, html));
+        }
+        return html;
+    }
+
+    /**
+     * Removes the cached tooltip of a waystone.
+     * 
+     * @param warpId Id of the waystone
+     */
+    public synchronized void invalidate(UUID warpId) {
+        entries.remove(warpId);
+    }
+
+    /**
+     * Removes all cached tooltips. Counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return Number of lookups served from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups that had to render the tooltip
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of entries evicted because the cache was full
+     */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Number of tooltips currently cached
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Maximum number of cached tooltips
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public String toString() {
+        long lookups = getHits() + getMisses();
+        long hitRate = lookups == 0 ? 0 : getHits() * 100 / lookups;
+        return size() + "/" + capacity + " entries, " + getHits() + " hits, " + getMisses() + " misses ("
+                + hitRate + "% hit rate), " + getEvictions() + " evictions";
+    }
+
+    private record Entry(Object fingerprint, String html) {
+    }
+}
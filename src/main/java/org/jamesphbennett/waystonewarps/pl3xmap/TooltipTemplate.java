@@ -0,0 +1,326 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Renders waystone tooltips as compact HTML using short CSS classes.
+ * 
+ * Responsibilities:
+ * - Render waystone and cluster tooltips referencing the shared stylesheet
+ * - Provide the stylesheet, which is attached once to the waystone layer
+ * - Escape user-generated content in a single pass
+ * - Track rendered tooltip sizes per world, along with the size the same
+ *   tooltips would have had with inline styles
+ * 
+ * Security: All user-generated content is escaped to prevent XSS attacks.
+ * 
+ * Thread-safe: Rendering has no shared mutable state and size statistics
+ * are kept in concurrent counters.
+ */
+public final class TooltipTemplate {
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
+            .ofPattern("yyyy-MM-dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    /**
+     * Version of the tooltip markup. Must be increased whenever the HTML produced
+     * by the render methods changes, so tooltips persisted by an older version are
+     * rebuilt instead of being shown.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * Stylesheet shared by every tooltip on the waystone layer.
+     * 
+     * Rules are scoped by class so they do not leak into the rest of the map UI.
+     */
+    public static final String STYLESHEET =
+            ".wt{padding:12px;font-family:sans-serif;min-width:200px}"
+            + ".wt-h{margin:0 0 12px 0;color:#5c7cfa;border-bottom:2px solid #5c7cfa;padding-bottom:4px}"
+            + ".wt-t{width:100%;border-collapse:collapse}"
+            + ".wt-l{padding:4px 8px;font-weight:bold;color:#495057}"
+            + ".wt-v{padding:4px 8px;color:#212529}"
+            + ".wt-m{font-family:monospace}"
+            + ".wt-d{color:#868e96;font-size:12px}"
+            + ".wt-pr{color:#ff6b6b}"
+            + ".wt-pu{color:#51cf66}";
+
+    /**
+     * Class attributes used by the template, paired with the inline style
+     * each one replaces so the saved bytes can be reported.
+     */
+    private enum Style {
+        CONTAINER("wt", "padding: 12px; font-family: sans-serif; min-width: 200px;"),
+        HEADER("wt-h", "margin: 0 0 12px 0; color: #5c7cfa; border-bottom: 2px solid #5c7cfa; padding-bottom: 4px;"),
+        TABLE("wt-t", "width: 100%; border-collapse: collapse;"),
+        LABEL("wt-l", "padding: 4px 8px; font-weight: bold; color: #495057;"),
+        VALUE("wt-v", "padding: 4px 8px; color: #212529;"),
+        MONO("wt-v wt-m", "padding: 4px 8px; color: #212529; font-family: monospace;"),
+        DATE("wt-v wt-d", "padding: 4px 8px; color: #212529; color: #868e96; font-size: 12px;"),
+        PRIVATE("wt-pr", "color: #ff6b6b;"),
+        PUBLIC("wt-pu", "color: #51cf66;");
+
+        private final String attribute;
+        private final int inlineOverhead;
+
+        Style(String className, String inlineCss) {
+            this.attribute = " class='" + className + "'";
+            // Styles are plain ASCII, so chars equal UTF-8 bytes
+            this.inlineOverhead = (" style='" + inlineCss + "'").length() - attribute.length();
+        }
+    }
+
+    private final Map<String, SizeCounter> sizesByWorld = new ConcurrentHashMap<>();
+
+    /**
+     * Renders the tooltip of a single waystone.
+     * 
+     * @param warp Captured properties of the waystone to render
+     * @param creationInstant When the waystone was created, or null if unknown
+     * @param ownerName Resolved name of the waystone owner
+     * @param worldName Name of the world the waystone is in
+     * @return HTML string for the tooltip
+     */
+    public String renderWaystone(WarpFingerprint warp, Instant creationInstant, String ownerName, String worldName) {
+        StringBuilder out = new StringBuilder(384);
+        int overhead = 0;
+
+        String creationTime = creationInstant != null
+                ? DATE_FORMATTER.format(creationInstant)
+                : "Unknown";
+
+        overhead += open(out, "div", Style.CONTAINER);
+        overhead += open(out, "h3", Style.HEADER);
+        escapeHtml(out, warp.name());
+        out.append("</h3>");
+        overhead += open(out, "table", Style.TABLE);
+
+        overhead += openRow(out, "Owner:", Style.VALUE);
+        escapeHtml(out, ownerName);
+        out.append("</td></tr>");
+
+        overhead += openRow(out, "Access:", Style.VALUE);
+        if (warp.locked()) {
+            overhead += open(out, "span", Style.PRIVATE);
+            out.append("🔒 Private</span>");
+        } else {
+            overhead += open(out, "span", Style.PUBLIC);
+            out.append("🔓 Public</span>");
+        }
+        out.append("</td></tr>");
+
+        overhead += openRow(out, "World:", Style.VALUE);
+        escapeHtml(out, worldName != null ? worldName : "Unknown World");
+        out.append("</td></tr>");
+
+        overhead += openRow(out, "Location:", Style.MONO);
+        out.append(warp.x()).append(", ")
+           .append(warp.y()).append(", ")
+           .append(warp.z())
+           .append("</td></tr>");
+
+        overhead += openRow(out, "Created:", Style.DATE);
+        escapeHtml(out, creationTime);
+        out.append("</td></tr>")
+           .append("</table>")
+           .append("</div>");
+
+        String html = out.toString();
+        recordSize(worldName != null ? worldName : "unknown", html, overhead);
+        return html;
+    }
+
+    /**
+     * Renders the summary tooltip of a cluster marker.
+     * 
+     * @param count Number of waystones in the cluster
+     * @param lockedCount Number of private waystones in the cluster
+     * @param sampleNames Names of some of the waystones
+     * @return HTML string for the tooltip
+     */
+    public String renderCluster(int count, int lockedCount, List<String> sampleNames) {
+        StringBuilder out = new StringBuilder(192 + sampleNames.size() * 32);
+
+        open(out, "div", Style.CONTAINER);
+        open(out, "h3", Style.HEADER);
+        out.append(count).append(" Waystones</h3>");
+        open(out, "table", Style.TABLE);
+
+        openRow(out, "Public:", Style.VALUE);
+        out.append(count - lockedCount).append("</td></tr>");
+        openRow(out, "Private:", Style.VALUE);
+        out.append(lockedCount).append("</td></tr>");
+
+        openRow(out, "Includes:", Style.VALUE);
+        for (int i = 0; i < sampleNames.size(); i++) {
+            if (i > 0) {
+                out.append("<br>");
+            }
+            escapeHtml(out, sampleNames.get(i));
+        }
+        if (count > sampleNames.size()) {
+            out.append("<br>&hellip; and ").append(count - sampleNames.size()).append(" more");
+        }
+        out.append("</td></tr>")
+           .append("</table>")
+           .append("</div>");
+
+        return out.toString();
+    }
+
+    /**
+     * Returns tooltip size statistics per world, sorted by world name.
+     * 
+     * @return Immutable view of the statistics
+     */
+    public Map<String, SizeStats> getSizeStats() {
+        Map<String, SizeStats> stats = new TreeMap<>();
+        sizesByWorld.forEach((world, counter) -> stats.put(world, counter.stats()));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * Returns tooltip size statistics of a single world.
+     * 
+     * @param worldName Name of the world
+     * @return The statistics, or null if no tooltip was rendered for the world yet
+     */
+    public SizeStats getSizeStats(String worldName) {
+        SizeCounter counter = sizesByWorld.get(worldName);
+        return counter != null ? counter.stats() : null;
+    }
+
+    /**
+     * Forgets the size statistics of every world.
+     */
+    public void resetSizeStats() {
+        sizesByWorld.clear();
+    }
+
+    /**
+     * Escapes HTML special characters in a single pass.
+     * 
+     * @param out StringBuilder to append the escaped text to
+     * @param text Text to escape (null appends nothing)
+     */
+    static void escapeHtml(StringBuilder out, String text) {
+        if (text == null) {
+            return;
+        }
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&' -> out.append("&amp;");
+                case '<' -> out.append("&lt;");
+                case '>' -> out.append("&gt;");
+                case '"' -> out.append("&quot;");
+                case '\'' -> out.append("&#39;");
+                default -> out.append(c);
+            }
+        }
+    }
+
+    /**
+     * Appends an opening tag carrying the class of a style.
+     * 
+     * @return Bytes the inline style would have added on top of the class
+     */
+    private static int open(StringBuilder out, String tag, Style style) {
+        out.append('<').append(tag).append(style.attribute).append('>');
+        return style.inlineOverhead;
+    }
+
+    /**
+     * Appends a row with its label cell and opens the value cell.
+     * 
+     * @return Bytes the inline styles would have added on top of the classes
+     */
+    private static int openRow(StringBuilder out, String label, Style valueStyle) {
+        out.append("<tr>");
+        int overhead = open(out, "td", Style.LABEL);
+        out.append(label).append("</td>");
+        return overhead + open(out, "td", valueStyle);
+    }
+
+    private void recordSize(String worldName, String html, int inlineOverhead) {
+        int bytes = utf8Length(html);
+        sizesByWorld.computeIfAbsent(worldName, ignored -> new SizeCounter())
+                .record(bytes, bytes + inlineOverhead);
+    }
+
+    /**
+     * Counts the UTF-8 encoded length of a string without encoding it.
+     */
+    private static int utf8Length(String text) {
+        int bytes = 0;
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                // The surrogate pair encodes to four bytes in total
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Average tooltip sizes of a world.
+     * 
+     * @param tooltips Number of tooltips rendered
+     * @param averageBytes Average size with shared stylesheet classes
+     * @param averageInlineBytes Average size the tooltips would have had with inline styles
+     */
+    public record SizeStats(long tooltips, long averageBytes, long averageInlineBytes) {
+        /**
+         * @return Percentage of bytes saved compared to inline styles
+         */
+        public int savedPercent() {
+            return averageInlineBytes == 0 ? 0 : (int) (100 - averageBytes * 100 / averageInlineBytes);
+        }
+
+        @Override
+        public String toString() {
+            return "avg " + averageBytes + " bytes (was " + averageInlineBytes + " inline, -"
+                    + savedPercent() + "%) over " + tooltips + " tooltips";
+        }
+    }
+
+    private static final class SizeCounter {
+        private final LongAdder tooltips = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder inlineBytes = new LongAdder();
+
+        void record(int size, int inlineSize) {
+            tooltips.increment();
+            bytes.add(size);
+            inlineBytes.add(inlineSize);
+        }
+
+        SizeStats stats() {
+            long count = tooltips.sum();
+            if (count == 0) {
+                return new SizeStats(0, 0, 0);
+            }
+            return new SizeStats(count, bytes.sum() / count, inlineBytes.sum() / count);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Detects exactly which waystones changed between refresh cycles.
+ * 
+ * Keeps a 64-bit content digest per waystone plus an order-independent
+ * aggregate (the sum of all mixed id/digest pairs) for every world. A detection
+ * pass first recomputes only the per-world aggregates; the per-waystone diff runs
+ * only in worlds whose aggregate or count differs, so unchanged worlds are
+ * skipped and idle servers pay one allocation-free pass. Both passes read the
+ * snapshot's id and digest columns, so digests are computed once per capture.
+ * 
+ * Thread-safe: All methods are synchronized on the detector instance.
+ */
+public class WarpChangeDetector {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Map<UUID, WorldBaseline> baselines;
+    private final Map<UUID, UUID> worldByWarp;
+
+    /**
+     * Creates a new detector with an empty baseline.
+     */
+    public WarpChangeDetector() {
+        this.baselines = new HashMap<>();
+        this.worldByWarp = new HashMap<>();
+    }
+
+    /**
+     * Replaces the baseline with the contents of a snapshot without reporting changes.
+     * 
+     * @param snapshot The snapshot that is now published
+     */
+    public synchronized void reset(WarpSnapshot snapshot) {
+        baselines.clear();
+        worldByWarp.clear();
+
+        for (UUID worldId : snapshot.getWorldIds()) {
+            WorldBaseline baseline = baseline(worldId);
+            for (int row : snapshot.rows(worldId)) {
+                UUID id = snapshot.id(row);
+                baseline.put(id, snapshot.digest(row));
+                worldByWarp.put(id, worldId);
+            }
+        }
+    }
+
+    /**
+     * Compares a snapshot against the baseline of every world and makes it the new baseline.
+     * 
+     * @param snapshot The current snapshot
+     * @return Ids of added, changed and removed waystones
+     */
+    public synchronized WarpChangeSet detect(WarpSnapshot snapshot) {
+        return detect(snapshot, null);
+    }
+
+    /**
+     * Compares a snapshot against the baseline of some worlds and makes it their new baseline.
+     * Waystones that moved between a checked and an unchecked world are reported as changed
+     * and their baseline entry follows them. The snapshot may hold only the checked worlds;
+     * a waystone that moved out of them is then reported as removed, and as added once its
+     * new world is checked.
+     * 
+     * @param snapshot The current snapshot
+     * @param worldIds UUIDs of the worlds to check, or null to check every world
+     * @return Ids of added, changed and removed waystones in the checked worlds
+     */
+    public synchronized WarpChangeSet detect(WarpSnapshot snapshot, Set<UUID> worldIds) {
+        Set<UUID> worlds = worldIds;
+        if (worlds == null) {
+            worlds = new HashSet<>(baselines.keySet());
+            worlds.addAll(snapshot.getWorldIds());
+        }
+
+        // Fast path: order-independent aggregate and count of each world are unchanged
+        List<UUID> dirty = new ArrayList<>();
+        for (UUID worldId : worlds) {
+            int[] rows = snapshot.rows(worldId);
+            WorldBaseline baseline = baselines.get(worldId);
+
+            long currentAggregate = 0L;
+            for (int row : rows) {
+                currentAggregate += combine(snapshot.idMost(row), snapshot.idLeast(row), snapshot.digest(row));
+            }
+
+            int baselineSize = baseline == null ? 0 : baseline.digests.size();
+            long baselineAggregate = baseline == null ? 0L : baseline.aggregate;
+            if (currentAggregate != baselineAggregate || rows.length != baselineSize) {
+                dirty.add(worldId);
+            }
+        }
+
+        if (dirty.isEmpty()) {
+            return WarpChangeSet.empty();
+        }
+
+        Set<UUID> added = new HashSet<>();
+        Set<UUID> changed = new HashSet<>();
+        Set<UUID> removed = new HashSet<>();
+
+        for (UUID worldId : dirty) {
+            WorldBaseline baseline = baseline(worldId);
+            Set<UUID> gone = new HashSet<>(baseline.digests.keySet());
+
+            for (int row : snapshot.rows(worldId)) {
+                UUID id = snapshot.id(row);
+                long digest = snapshot.digest(row);
+                gone.remove(id);
+
+                UUID previousWorld = worldByWarp.put(id, worldId);
+                if (previousWorld != null && !previousWorld.equals(worldId)) {
+                    // Moved in from another world; its old entry follows it
+                    removeFrom(previousWorld, id);
+                    baseline.put(id, digest);
+                    changed.add(id);
+                    continue;
+                }
+
+                Long previous = baseline.put(id, digest);
+                if (previous == null) {
+                    added.add(id);
+                } else if (previous != digest) {
+                    changed.add(id);
+                }
+            }
+
+            for (UUID id : gone) {
+                baseline.remove(id);
+                int row = snapshot.row(id);
+                if (row >= 0) {
+                    // Moved out to another world; its entry follows it
+                    UUID movedTo = snapshot.worldId(row);
+                    worldByWarp.put(id, movedTo);
+                    baseline(movedTo).put(id, snapshot.digest(row));
+                    changed.add(id);
+                } else {
+                    worldByWarp.remove(id);
+                    removed.add(id);
+                }
+            }
+
+            if (baseline.digests.isEmpty()) {
+                baselines.remove(worldId);
+            }
+        }
+
+        return new WarpChangeSet(added, changed, removed);
+    }
+
+    /**
+     * Updates the baseline for individual waystones only.
+     * Used after targeted updates so the next detection pass does not report them again.
+     * 
+     * @param ids Ids of the waystones to update
+     * @param snapshot Snapshot containing their current state
+     */
+    public synchronized void update(Collection<UUID> ids, WarpSnapshot snapshot) {
+        for (UUID id : ids) {
+            UUID previousWorld = worldByWarp.remove(id);
+            if (previousWorld != null) {
+                removeFrom(previousWorld, id);
+            }
+
+            int row = snapshot.row(id);
+            if (row >= 0) {
+                UUID worldId = snapshot.worldId(row);
+                baseline(worldId).put(id, snapshot.digest(row));
+                worldByWarp.put(id, worldId);
+            }
+        }
+    }
+
+    private WorldBaseline baseline(UUID worldId) {
+        return baselines.computeIfAbsent(worldId, id -> new WorldBaseline());
+    }
+
+    private void removeFrom(UUID worldId, UUID id) {
+        WorldBaseline baseline = baselines.get(worldId);
+        if (baseline != null) {
+            baseline.remove(id);
+            if (baseline.digests.isEmpty()) {
+                baselines.remove(worldId);
+            }
+        }
+    }
+
+    /**
+     * Computes the 64-bit content digest of a waystone from its raw values.
+     * 
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @param locked Lock state
+     * @param ownerId UUID of the owner, or null
+     * @param worldId UUID of the world
+     * @param name Name of the waystone, or null
+     * @param creationMillis Creation time in epoch milliseconds, or 0 if unknown
+     * @return FNV-1a digest of all marker-relevant properties
+     */
+    static long digest(int x, int y, int z, boolean locked, UUID ownerId, UUID worldId, String name,
+                       long creationMillis) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = mix(hash, x);
+        hash = mix(hash, y);
+        hash = mix(hash, z);
+        hash = mix(hash, locked ? 1 : 0);
+        hash = mix(hash, ownerId);
+        hash = mix(hash, worldId);
+
+        if (name != null) {
+            for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+                hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+            }
+        }
+
+        hash = mix(hash, creationMillis);
+        return hash;
+    }
+
+    private static long mix(long hash, UUID uuid) {
+        if (uuid == null) {
+            return mix(hash, 0L);
+        }
+        return mix(mix(hash, uuid.getMostSignificantBits()), uuid.getLeastSignificantBits());
+    }
+
+    private static long mix(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = (hash ^ ((value >>> (i * 8)) & 0xff)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Binds a digest to its waystone id and spreads the bits so that the
+     * aggregate sum does not cancel out for swapped or similar entries.
+     */
+    private static long combine(long idMost, long idLeast, long digest) {
+        long h = digest ^ idMost * 0x9e3779b97f4a7c15L ^ idLeast;
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static long combine(UUID id, long digest) {
+        return combine(id.getMostSignificantBits(), id.getLeastSignificantBits(), digest);
+    }
+
+    /**
+     * Digests and aggregate of the waystones in one world.
+     */
+    private static final class WorldBaseline {
+        private final Map<UUID, Long> digests = new HashMap<>();
+        private long aggregate;
+
+        Long put(UUID id, long digest) {
+            Long previous = digests.put(id, digest);
+            if (previous != null) {
+                aggregate -= combine(id, previous);
+            }
+            aggregate += combine(id, digest);
+            return previous;
+        }
+
+        void remove(UUID id) {
+            Long previous = digests.remove(id);
+            if (previous != null) {
+                aggregate -= combine(id, previous);
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Exact set of waystone ids that changed between two snapshots.
+ * 
+ * @param added Ids of waystones that did not exist before
+ * @param changed Ids of waystones whose content changed
+ * @param removed Ids of waystones that no longer exist
+ */
+public record WarpChangeSet(Set<UUID> added, Set<UUID> changed, Set<UUID> removed) {
+    private static final WarpChangeSet EMPTY = new WarpChangeSet(Set.of(), Set.of(), Set.of());
+
+    /**
+     * @return A change set without any changes
+     */
+    public static WarpChangeSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * @return true if nothing was added, changed or removed
+     */
+    public boolean isEmpty() {
+        return added.isEmpty() && changed.isEmpty() && removed.isEmpty();
+    }
+
+    /**
+     * @return Ids of all added, changed and removed waystones
+     */
+    public Set<UUID> allIds() {
+        Set<UUID> ids = new HashSet<>(added.size() + changed.size() + removed.size());
+        ids.addAll(added);
+        ids.addAll(changed);
+        ids.addAll(removed);
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        return added.size() + " added, " + changed.size() + " changed, " + removed.size() + " removed";
+    }
+}
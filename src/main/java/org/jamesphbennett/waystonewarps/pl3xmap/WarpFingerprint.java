@@ -0,0 +1,46 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * Immutable snapshot of every waystone property that affects its marker.
+ * 
+ * Two fingerprints are equal when the rendered marker would be identical,
+ * so the reconciler can skip rebuilding markers whose fingerprint did not change.
+ * 
+ * @param x Block X coordinate
+ * @param y Block Y coordinate
+ * @param z Block Z coordinate
+ * @param name Display name of the waystone
+ * @param locked Whether the waystone is private
+ * @param ownerId UUID of the owning player
+ * @param worldId UUID of the Bukkit world the waystone is in
+ */
+public record WarpFingerprint(int x, int y, int z, String name, boolean locked, UUID ownerId, UUID worldId) {
+
+    /**
+     * Captures the fingerprint of a waystone.
+     * 
+     * @param warp The waystone to fingerprint
+     * @return The fingerprint of the waystone's current state
+     * @throws IllegalArgumentException if warp is null
+     */
+    public static WarpFingerprint of(Warp warp) {
+        if (warp == null) {
+            throw new IllegalArgumentException("Warp cannot be null");
+        }
+
+        return new WarpFingerprint(
+                warp.getPosition().getX(),
+                warp.getPosition().getY(),
+                warp.getPosition().getZ(),
+                Objects.requireNonNullElse(warp.getName(), ""),
+                warp.isLocked(),
+                warp.getPlayerId(),
+                warp.getWorldId()
+        );
+    }
+}
@@ -0,0 +1,556 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import dev.mizarc.waystonewarps.domain.warps.Warp;
+import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Point-in-time view of all waystones, partitioned by world.
+ * 
+ * Captured once per refresh cycle with a single repository read and a single
+ * bucketing pass, then shared by change detection and every world's rebuild.
+ * 
+ * Stored column-wise: every waystone is a row in parallel primitive arrays
+ * (id halves, coordinates, flag bits, creation time, interned world, owner and
+ * name indexes and the content digest). Lookups by id and by block use
+ * open-addressing tables of row numbers instead of boxed map entries. The
+ * waystones are read once while capturing and never referenced afterwards:
+ * change detection and marker building run over the columns alone, and equal
+ * names share one string.
+ * 
+ * Immutable: Safe to share between threads once captured.
+ */
+public final class WarpSnapshot {
+    private static final byte FLAG_LOCKED = 1;
+    private static final int[] NO_ROWS = new int[0];
+    private static final long NO_CREATION_TIME = Long.MIN_VALUE;
+
+    private final int size;
+    private final long[] idMost;
+    private final long[] idLeast;
+    private final int[] x;
+    private final int[] y;
+    private final int[] z;
+    private final byte[] flags;
+    private final int[] worldIndex;
+    private final int[] ownerIndex;
+    private final int[] nameIndex;
+    private final long[] creationMillis;
+    private final long[] digests;
+
+    private final Map<UUID, Integer> worldIndexes;
+    private final UUID[] worldIds;
+    private final UUID[] ownerIds;
+    private final String[] names;
+    private final int[][] rowsByWorld;
+
+    // Row + 1 per slot, 0 marks an empty slot
+    private final int[] idTable;
+    private final int[] blockTable;
+
+    private WarpSnapshot(Builder builder) {
+        int size = builder.size;
+        this.size = size;
+        this.idMost = Arrays.copyOf(builder.idMost, size);
+        this.idLeast = Arrays.copyOf(builder.idLeast, size);
+        this.x = Arrays.copyOf(builder.x, size);
+        this.y = Arrays.copyOf(builder.y, size);
+        this.z = Arrays.copyOf(builder.z, size);
+        this.flags = Arrays.copyOf(builder.flags, size);
+        this.worldIndex = Arrays.copyOf(builder.worldIndex, size);
+        this.ownerIndex = Arrays.copyOf(builder.ownerIndex, size);
+        this.nameIndex = Arrays.copyOf(builder.nameIndex, size);
+        this.creationMillis = Arrays.copyOf(builder.creationMillis, size);
+        this.digests = Arrays.copyOf(builder.digests, size);
+        this.worldIndexes = Collections.unmodifiableMap(builder.worldIndexes);
+        this.worldIds = table(builder.worldIndexes, new UUID[builder.worldIndexes.size()]);
+        this.ownerIds = table(builder.ownerIndexes, new UUID[builder.ownerIndexes.size()]);
+        this.names = table(builder.nameIndexes, new String[builder.nameIndexes.size()]);
+
+        // Rows added from waystones are digested here, copied rows keep theirs
+        for (int row = builder.copied.nextClearBit(0); row < size; row = builder.copied.nextClearBit(row + 1)) {
+            long created = creationMillis[row] == NO_CREATION_TIME ? 0L : creationMillis[row];
+            digests[row] = WarpChangeDetector.digest(x[row], y[row], z[row], isLocked(row), ownerId(row),
+                    worldId(row), names[nameIndex[row]], created);
+        }
+
+        // Bucket rows by world with a counting pass, keeping insertion order
+        int[] counts = new int[worldIndexes.size()];
+        for (int row = 0; row < size; row++) {
+            counts[worldIndex[row]]++;
+        }
+        this.rowsByWorld = new int[counts.length][];
+        for (int world = 0; world < counts.length; world++) {
+            rowsByWorld[world] = new int[counts[world]];
+        }
+        int[] fill = new int[counts.length];
+        for (int row = 0; row < size; row++) {
+            int world = worldIndex[row];
+            rowsByWorld[world][fill[world]++] = row;
+        }
+
+        this.idTable = new int[tableCapacity(size)];
+        this.blockTable = new int[tableCapacity(size)];
+        for (int row = 0; row < size; row++) {
+            insert(idTable, idHash(idMost[row], idLeast[row]), row, this::sameId);
+            insert(blockTable, blockHash(worldIndex[row], x[row], y[row], z[row]), row, this::sameBlock);
+        }
+    }
+
+    /**
+     * Reads the repository once and buckets all waystones by world UUID.
+     * 
+     * @param warpRepository Repository containing waystone data
+     * @return The captured snapshot
+     * @throws IllegalArgumentException if warpRepository is null
+     */
+    public static WarpSnapshot capture(WarpRepository warpRepository) {
+        if (warpRepository == null) {
+            throw new IllegalArgumentException("Warp repository cannot be null");
+        }
+        return of(warpRepository.getAll());
+    }
+
+    /**
+     * Builds a snapshot from an already fetched collection of waystones.
+     * 
+     * @param source Waystones to include (null entries are skipped)
+     * @return The snapshot
+     */
+    public static WarpSnapshot of(Collection<Warp> source) {
+        return builder(source).build();
+    }
+
+    /**
+     * Creates a builder holding the raw values of already fetched waystones.
+     * Digests and lookup tables are computed when it is built, so a capture on
+     * the main thread can leave that work to the thread that calls {@link Builder#build()}.
+     * 
+     * @param source Waystones to include (null entries are skipped)
+     * @return A builder holding the waystones
+     */
+    public static Builder builder(Collection<Warp> source) {
+        return builder(source, null);
+    }
+
+    /**
+     * Creates a builder holding the raw values of the waystones in some worlds.
+     * Waystones in other worlds are skipped without reading anything but their world.
+     * 
+     * @param source Waystones to include (null entries are skipped)
+     * @param worldIds UUIDs of the worlds to include, or null to include every world
+     * @return A builder holding the waystones
+     */
+    public static Builder builder(Collection<Warp> source, Set<UUID> worldIds) {
+        Builder builder = builder(worldIds == null ? source.size() : 0);
+        for (Warp warp : source) {
+            if (worldIds == null || warp != null && worldIds.contains(warp.getWorldId())) {
+                builder.add(warp);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Builds a copy of this snapshot in which some waystones are replaced or dropped.
+     * Untouched rows are copied column by column, keeping their digests, so a
+     * targeted update costs one pass over the columns instead of a repository read.
+     * 
+     * @param warpIds Ids of the waystones to replace or drop
+     * @param updated Current state of those waystones that still exist (ids missing here are dropped)
+     * @return The patched snapshot
+     */
+    public WarpSnapshot patch(Set<UUID> warpIds, Collection<Warp> updated) {
+        Builder builder = builder(size + updated.size());
+        for (int row = 0; row < size; row++) {
+            if (!warpIds.contains(id(row))) {
+                builder.copy(this, row);
+            }
+        }
+        for (Warp warp : updated) {
+            builder.add(warp);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Builds a copy of this snapshot in which some worlds are taken from a newer snapshot.
+     * Used after a change check of only those worlds, so waystones elsewhere keep
+     * the state that was last published for them. Waystones that moved into a
+     * checked world take their newer state too. The newer snapshot may hold only
+     * the checked worlds; a waystone that moved out of them is then dropped until
+     * its new world is checked.
+     * 
+     * @param newer The newer snapshot
+     * @param worldIds UUIDs of the worlds to take from the newer snapshot
+     * @return The patched snapshot
+     */
+    public WarpSnapshot patchWorlds(WarpSnapshot newer, Set<UUID> worldIds) {
+        Set<UUID> warpIds = new HashSet<>();
+        for (UUID worldId : worldIds) {
+            for (int row : rows(worldId)) {
+                warpIds.add(id(row));
+            }
+            for (int row : newer.rows(worldId)) {
+                warpIds.add(newer.id(row));
+            }
+        }
+
+        Builder builder = builder(size + warpIds.size());
+        for (int row = 0; row < size; row++) {
+            if (!warpIds.contains(id(row))) {
+                builder.copy(this, row);
+            }
+        }
+        for (UUID id : warpIds) {
+            int row = newer.row(id);
+            if (row >= 0) {
+                builder.copy(newer, row);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Creates a builder that collects waystones one at a time, so a snapshot
+     * can be assembled in slices across several ticks.
+     * 
+     * @param expectedSize Expected number of waystones
+     * @return A new builder
+     */
+    public static Builder builder(int expectedSize) {
+        return new Builder(expectedSize);
+    }
+
+    /**
+     * @return UUIDs of all worlds that contain at least one waystone
+     */
+    public Collection<UUID> getWorldIds() {
+        return worldIndexes.keySet();
+    }
+
+    /**
+     * @return UUIDs of all players owning at least one waystone
+     */
+    public Set<UUID> getOwnerIds() {
+        return Set.of(ownerIds);
+    }
+
+    /**
+     * Returns the id of the waystone whose block is at the given position.
+     * 
+     * @param worldId UUID of the Bukkit world
+     * @param x Block X coordinate
+     * @param y Block Y coordinate
+     * @param z Block Z coordinate
+     * @return Id of the waystone at that block, or null if there is none
+     */
+    public UUID getWarpIdAt(UUID worldId, int x, int y, int z) {
+        Integer world = worldIndexes.get(worldId);
+        if (world == null) {
+            return null;
+        }
+
+        int mask = blockTable.length - 1;
+        for (int slot = blockHash(world, x, y, z) & mask; blockTable[slot] != 0; slot = (slot + 1) & mask) {
+            int row = blockTable[slot] - 1;
+            if (worldIndex[row] == world && this.x[row] == x && this.y[row] == y && this.z[row] == z) {
+                return id(row);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds the ids of all waystones owned by the given players, scanning only the owner column.
+     * 
+     * @param owners UUIDs of the owners
+     * @param target Collection receiving the waystone ids
+     */
+    public void addWarpIdsOwnedBy(Set<UUID> owners, Collection<UUID> target) {
+        boolean[] wanted = new boolean[ownerIds.length];
+        boolean any = false;
+        for (int owner = 0; owner < ownerIds.length; owner++) {
+            if (owners.contains(ownerIds[owner])) {
+                wanted[owner] = true;
+                any = true;
+            }
+        }
+        if (!any) {
+            return;
+        }
+
+        for (int row = 0; row < size; row++) {
+            if (ownerIndex[row] >= 0 && wanted[ownerIndex[row]]) {
+                target.add(id(row));
+            }
+        }
+    }
+
+    /**
+     * @return Total number of waystones in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param worldId UUID of the Bukkit world
+     * @return Rows of the waystones in that world, in insertion order (must not be modified)
+     */
+    int[] rows(UUID worldId) {
+        Integer world = worldIndexes.get(worldId);
+        return world == null ? NO_ROWS : rowsByWorld[world];
+    }
+
+    /**
+     * @param warpId Id of a waystone
+     * @return The waystone's row, or -1 if it is not in the snapshot
+     */
+    int row(UUID warpId) {
+        long most = warpId.getMostSignificantBits();
+        long least = warpId.getLeastSignificantBits();
+        int mask = idTable.length - 1;
+        for (int slot = idHash(most, least) & mask; idTable[slot] != 0; slot = (slot + 1) & mask) {
+            int row = idTable[slot] - 1;
+            if (idMost[row] == most && idLeast[row] == least) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    UUID id(int row) {
+        return new UUID(idMost[row], idLeast[row]);
+    }
+
+    long idMost(int row) {
+        return idMost[row];
+    }
+
+    long idLeast(int row) {
+        return idLeast[row];
+    }
+
+    long digest(int row) {
+        return digests[row];
+    }
+
+    boolean isLocked(int row) {
+        return (flags[row] & FLAG_LOCKED) != 0;
+    }
+
+    UUID worldId(int row) {
+        return worldIds[worldIndex[row]];
+    }
+
+    /**
+     * @param row Row of a waystone
+     * @return When the waystone was created, or null if unknown
+     */
+    Instant creationTime(int row) {
+        return creationMillis[row] == NO_CREATION_TIME ? null : Instant.ofEpochMilli(creationMillis[row]);
+    }
+
+    /**
+     * @param row Row of a waystone
+     * @return Fingerprint of the waystone's marker, read from the columns
+     */
+    WarpFingerprint fingerprint(int row) {
+        return new WarpFingerprint(x[row], y[row], z[row], names[nameIndex[row]], isLocked(row), ownerId(row),
+                worldId(row));
+    }
+
+    /**
+     * @param row Row of a waystone
+     * @return UUID of the waystone's owner, or null if it has none
+     */
+    UUID ownerId(int row) {
+        return ownerIndex[row] < 0 ? null : ownerIds[ownerIndex[row]];
+    }
+
+    private static <T> T[] table(Map<T, Integer> indexes, T[] table) {
+        for (Map.Entry<T, Integer> entry : indexes.entrySet()) {
+            table[entry.getValue()] = entry.getKey();
+        }
+        return table;
+    }
+
+    private boolean sameId(int a, int b) {
+        return idMost[a] == idMost[b] && idLeast[a] == idLeast[b];
+    }
+
+    private boolean sameBlock(int a, int b) {
+        return worldIndex[a] == worldIndex[b] && x[a] == x[b] && y[a] == y[b] && z[a] == z[b];
+    }
+
+    /**
+     * Inserts a row into an open-addressing table; a later row replaces an equal earlier one.
+     */
+    private static void insert(int[] table, int hash, int row, RowEquality equality) {
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        while (table[slot] != 0 && !equality.test(table[slot] - 1, row)) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = row + 1;
+    }
+
+    private static int tableCapacity(int size) {
+        // Power of two, at most half full
+        return Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+    }
+
+    private static int idHash(long most, long least) {
+        long h = (most ^ least) * 0x9e3779b97f4a7c15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int blockHash(int world, int x, int y, int z) {
+        int h = world;
+        h = h * 31 + x;
+        h = h * 31 + y;
+        h = h * 31 + z;
+        return h ^ (h >>> 16);
+    }
+
+    @FunctionalInterface
+    private interface RowEquality {
+        boolean test(int a, int b);
+    }
+
+    /**
+     * Collects waystones into a snapshot.
+     * 
+     * Not thread-safe: Must be filled and built by one thread at a time.
+     */
+    public static final class Builder {
+        private long[] idMost;
+        private long[] idLeast;
+        private int[] x;
+        private int[] y;
+        private int[] z;
+        private byte[] flags;
+        private int[] worldIndex;
+        private int[] ownerIndex;
+        private int[] nameIndex;
+        private long[] creationMillis;
+        private long[] digests;
+        private final Map<UUID, Integer> worldIndexes = new HashMap<>();
+        private final Map<UUID, Integer> ownerIndexes = new HashMap<>();
+        private final Map<String, Integer> nameIndexes = new HashMap<>();
+        private final BitSet copied = new BitSet();
+        private int size;
+        private boolean built;
+
+        private Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            this.idMost = new long[capacity];
+            this.idLeast = new long[capacity];
+            this.x = new int[capacity];
+            this.y = new int[capacity];
+            this.z = new int[capacity];
+            this.flags = new byte[capacity];
+            this.worldIndex = new int[capacity];
+            this.ownerIndex = new int[capacity];
+            this.nameIndex = new int[capacity];
+            this.creationMillis = new long[capacity];
+            this.digests = new long[capacity];
+        }
+
+        /**
+         * Adds a waystone to the snapshot, reading only its raw values.
+         * Its digest is computed when the snapshot is built.
+         * 
+         * @param warp The waystone (null or world-less entries are skipped)
+         */
+        public void add(Warp warp) {
+            if (built) {
+                throw new IllegalStateException("Snapshot was already built");
+            }
+            if (warp == null || warp.getWorldId() == null) return;
+
+            UUID id = warp.getId();
+            Instant created = warp.getCreationTime();
+            int row = append(id.getMostSignificantBits(), id.getLeastSignificantBits(), warp.getPosition().getX(),
+                    warp.getPosition().getY(), warp.getPosition().getZ(), warp.isLocked() ? FLAG_LOCKED : 0,
+                    warp.getWorldId(), warp.getPlayerId(), Objects.requireNonNullElse(warp.getName(), ""),
+                    created == null ? NO_CREATION_TIME : created.toEpochMilli());
+        }
+
+        /**
+         * Copies a row of another snapshot, keeping its digest.
+         */
+        private void copy(WarpSnapshot source, int sourceRow) {
+            int row = append(source.idMost[sourceRow], source.idLeast[sourceRow], source.x[sourceRow],
+                    source.y[sourceRow], source.z[sourceRow], source.flags[sourceRow], source.worldId(sourceRow),
+                    source.ownerId(sourceRow), source.names[source.nameIndex[sourceRow]],
+                    source.creationMillis[sourceRow]);
+            digests[row] = source.digests[sourceRow];
+            copied.set(row);
+        }
+
+        private int append(long most, long least, int blockX, int blockY, int blockZ, byte rowFlags, UUID worldId,
+                           UUID ownerId, String name, long created) {
+            if (size == idMost.length) {
+                grow();
+            }
+
+            int row = size++;
+            idMost[row] = most;
+            idLeast[row] = least;
+            x[row] = blockX;
+            y[row] = blockY;
+            z[row] = blockZ;
+            flags[row] = rowFlags;
+            worldIndex[row] = worldIndexes.computeIfAbsent(worldId, key -> worldIndexes.size());
+            ownerIndex[row] = ownerId == null ? -1 : ownerIndexes.computeIfAbsent(ownerId, key -> ownerIndexes.size());
+            nameIndex[row] = nameIndexes.computeIfAbsent(name, key -> nameIndexes.size());
+            creationMillis[row] = created;
+            return row;
+        }
+
+        /**
+         * @return UUIDs of the worlds the collected waystones are in
+         */
+        public Set<UUID> getWorldIds() {
+            return Set.copyOf(worldIndexes.keySet());
+        }
+
+        /**
+         * Freezes the collected waystones into a snapshot. The builder cannot be used afterwards.
+         * 
+         * @return The snapshot
+         */
+        public WarpSnapshot build() {
+            built = true;
+            return new WarpSnapshot(this);
+        }
+
+        private void grow() {
+            int capacity = idMost.length * 2;
+            idMost = Arrays.copyOf(idMost, capacity);
+            idLeast = Arrays.copyOf(idLeast, capacity);
+            x = Arrays.copyOf(x, capacity);
+            y = Arrays.copyOf(y, capacity);
+            z = Arrays.copyOf(z, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            worldIndex = Arrays.copyOf(worldIndex, capacity);
+            ownerIndex = Arrays.copyOf(ownerIndex, capacity);
+            nameIndex = Arrays.copyOf(nameIndex, capacity);
+            creationMillis = Arrays.copyOf(creationMillis, capacity);
+            digests = Arrays.copyOf(digests, capacity);
+        }
+    }
+}
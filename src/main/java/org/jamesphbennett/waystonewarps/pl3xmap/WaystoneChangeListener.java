@@ -0,0 +1,200 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bukkit listener that requests targeted waystone updates from the refresh coordinator.
+ * 
+ * WaystoneWarps does not fire its own events, so changes are inferred from
+ * the Bukkit events that cause them:
+ * - Breaking or blowing up a waystone block removes that waystone
+ * - Placing a waystone block may create a waystone for the placing player
+ * - Closing one of WaystoneWarps' menus may have renamed, locked or created
+ *   a waystone of that player
+ * 
+ * Other blocks and inventories are ignored. Events are collected for a few
+ * ticks and flushed as one targeted update, giving WaystoneWarps time to write
+ * the change to its repository first. The update only looks up the affected
+ * waystones and runs through the coordinator like every other refresh.
+ * 
+ * Thread-safe: Event handlers and the flush task run on the main Bukkit thread.
+ */
+public class WaystoneChangeListener implements Listener {
+    private static final long FLUSH_DELAY_TICKS = 5L;
+    private static final Material WAYSTONE_BLOCK = Material.LODESTONE;
+
+    private final Plugin plugin;
+    private final ClassLoader waystoneClassLoader;
+    private final Pl3xmapLayerManager layerManager;
+    private final RefreshCoordinator coordinator;
+    private final Set<UUID> pendingWarpIds;
+    private final Set<UUID> pendingOwnerIds;
+    private boolean flushScheduled;
+
+    /**
+     * Creates a new waystone change listener.
+     * 
+     * @param plugin The plugin instance for scheduling
+     * @param waystonePlugin The WaystoneWarps plugin, used to recognise its menus
+     * @param layerManager The layer manager whose last snapshot locates waystone blocks
+     * @param coordinator The coordinator that runs the targeted updates
+     * @throws IllegalArgumentException if any parameter is null
+     */
+    public WaystoneChangeListener(Plugin plugin, Plugin waystonePlugin, Pl3xmapLayerManager layerManager,
+                                  RefreshCoordinator coordinator) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (waystonePlugin == null) {
+            throw new IllegalArgumentException("WaystoneWarps plugin cannot be null");
+        }
+        if (layerManager == null) {
+            throw new IllegalArgumentException("Layer manager cannot be null");
+        }
+        if (coordinator == null) {
+            throw new IllegalArgumentException("Refresh coordinator cannot be null");
+        }
+
+        this.plugin = plugin;
+        this.waystoneClassLoader = waystonePlugin.getClass().getClassLoader();
+        this.layerManager = layerManager;
+        this.coordinator = coordinator;
+        this.pendingWarpIds = new HashSet<>();
+        this.pendingOwnerIds = new HashSet<>();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        markBlock(event.getBlock());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        markBlocks(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        markBlocks(event.blockList());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        if (event.getBlockPlaced().getType() == WAYSTONE_BLOCK) {
+            markOwner(event.getPlayer().getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onInventoryClose(InventoryCloseEvent event) {
+        if (isWaystoneMenu(event.getInventory().getHolder(false))) {
+            markOwner(event.getPlayer().getUniqueId());
+        }
+    }
+
+    /**
+     * Checks whether an inventory belongs to one of WaystoneWarps' menus,
+     * recognised by its holder being a class loaded by that plugin.
+     * 
+     * @param holder Holder of the closed inventory, may be null
+     * @return True if the holder is a WaystoneWarps menu
+     */
+    private boolean isWaystoneMenu(InventoryHolder holder) {
+        return holder != null && holder.getClass().getClassLoader() == waystoneClassLoader;
+    }
+
+    /**
+     * Marks the waystones at a list of destroyed blocks as changed.
+     * 
+     * @param blocks The destroyed blocks
+     */
+    private void markBlocks(List<Block> blocks) {
+        for (Block block : blocks) {
+            markBlock(block);
+        }
+    }
+
+    /**
+     * Marks the waystone at a block, or directly below it, as changed.
+     * The block above the base is checked too since breaking it breaks the waystone.
+     * 
+     * @param block The changed block
+     */
+    private void markBlock(Block block) {
+        WarpSnapshot snapshot = layerManager.getLastSnapshot();
+        if (snapshot == null || block == null) {
+            return;
+        }
+
+        UUID worldId = block.getWorld().getUID();
+        UUID warpId = snapshot.getWarpIdAt(worldId, block.getX(), block.getY(), block.getZ());
+        if (warpId == null) {
+            warpId = snapshot.getWarpIdAt(worldId, block.getX(), block.getY() - 1, block.getZ());
+        }
+
+        if (warpId != null) {
+            pendingWarpIds.add(warpId);
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Marks all waystones of a player as possibly changed.
+     * 
+     * @param ownerId UUID of the player
+     */
+    private void markOwner(UUID ownerId) {
+        if (ownerId != null && pendingOwnerIds.add(ownerId)) {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * Schedules a single flush of all pending changes.
+     */
+    private void scheduleFlush() {
+        if (flushScheduled || !plugin.isEnabled()) {
+            return;
+        }
+
+        flushScheduled = true;
+        plugin.getServer().getScheduler().runTaskLater(plugin, this::flush, FLUSH_DELAY_TICKS);
+    }
+
+    /**
+     * Requests one targeted update for all pending changes.
+     */
+    private void flush() {
+        flushScheduled = false;
+        if (pendingWarpIds.isEmpty() && pendingOwnerIds.isEmpty()) {
+            return;
+        }
+
+        Set<UUID> warpIds = new HashSet<>(pendingWarpIds);
+        Set<UUID> ownerIds = new HashSet<>(pendingOwnerIds);
+        pendingWarpIds.clear();
+        pendingOwnerIds.clear();
+
+        try {
+            coordinator.requestWarps(warpIds, ownerIds, RefreshMetrics.Source.EVENTS);
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to apply waystone update: " + e.getMessage());
+        }
+    }
+}
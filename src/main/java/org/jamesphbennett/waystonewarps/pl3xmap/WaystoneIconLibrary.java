@@ -0,0 +1,342 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.image.IconImage;
+import org.bukkit.plugin.Plugin;
+
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Decodes, scales and registers the icon images used by waystone markers.
+ * 
+ * Responsibilities:
+ * - Decode every source image exactly once and keep the decoded sources in memory
+ * - Pre-scale icons to the configured marker size (and the cluster size)
+ * - Rescale the decoded sources for a new icon size without reading any file
+ * - Load optional overrides and per-world variants from the data folder
+ * - Re-register the cached images with Pl3xMap after its registry was cleared
+ * - Remove its images from Pl3xMap when it is replaced, e.g. by a new icon size
+ * 
+ * Icon sources, in order of precedence:
+ * - icons/worlds/&lt;world&gt;/waystone_icon.png (and waystone_locked_icon.png)
+ * - icons/waystone_icon.png (and waystone_locked_icon.png)
+ * - The icons bundled with the plugin
+ * 
+ * Thread-safe: Icon keys may be resolved from any thread. Loading and
+ * registration must happen on the main thread.
+ */
+public class WaystoneIconLibrary {
+    private static final String ICON_FOLDER = "icons";
+    private static final String WORLD_ICON_FOLDER = "worlds";
+    private static final String CLUSTER_SUFFIX = "_cluster";
+
+    /**
+     * Waystone states that have their own icon.
+     */
+    public enum State {
+        PUBLIC("waystone_icon", "waystone_icon.png"),
+        LOCKED("waystone_locked_icon", "waystone_locked_icon.png");
+
+        private final String key;
+        private final String fileName;
+
+        State(String key, String fileName) {
+            this.key = key;
+            this.fileName = fileName;
+        }
+    }
+
+    private final Plugin plugin;
+    private final int iconSize;
+    private final int clusterIconSize;
+
+    // Decoded source images by icon key, shared with resized libraries
+    private final Map<String, BufferedImage> sources = new ConcurrentHashMap<>();
+    // Scaled images by icon key
+    private final Map<String, IconImage> images = new ConcurrentHashMap<>();
+    // World name -> key prefix of the world's own variants
+    private final Map<String, String> worldVariants = new ConcurrentHashMap<>();
+    private volatile boolean loaded;
+
+    /**
+     * Creates a new icon library.
+     * 
+     * @param plugin The plugin instance for resource access and logging
+     * @param iconSize Edge length of waystone icons in pixels
+     * @param clusterIconSize Edge length of cluster icons in pixels
+     * @throws IllegalArgumentException if plugin is null or a size is invalid
+     */
+    public WaystoneIconLibrary(Plugin plugin, int iconSize, int clusterIconSize) {
+        if (plugin == null) {
+            throw new IllegalArgumentException("Plugin cannot be null");
+        }
+        if (iconSize <= 0 || clusterIconSize <= 0) {
+            throw new IllegalArgumentException("Icon size must be positive");
+        }
+
+        this.plugin = plugin;
+        this.iconSize = iconSize;
+        this.clusterIconSize = clusterIconSize;
+    }
+
+    /**
+     * Registers all icons with Pl3xMap, decoding them on first use.
+     * 
+     * Idempotent: Icons already present in the Pl3xMap registry are skipped,
+     * so after the first call this is a registry lookup per icon.
+     * 
+     * @param platform The map to register the icons with
+     */
+    public void registerAll(MapPlatform platform) {
+        if (!loaded) {
+            load();
+        }
+
+        int registered = 0;
+        for (IconImage image : images.values()) {
+            if (platform.hasIcon(image.getKey())) {
+                continue;
+            }
+            try {
+                platform.registerIcon(image);
+                registered++;
+            } catch (Exception e) {
+                plugin.getLogger().severe("Failed to register icon " + image.getKey() + ": " + e.getMessage());
+                e.printStackTrace();
+            }
+        }
+
+        if (registered > 0) {
+            plugin.getLogger().info("Registered " + registered + " waystone icon(s)");
+        }
+    }
+
+    /**
+     * Creates a library with other icon sizes from this library's decoded sources.
+     * No file or resource is read again; the sources are only rescaled.
+     * 
+     * @param newIconSize Edge length of waystone icons in pixels
+     * @param newClusterIconSize Edge length of cluster icons in pixels
+     * @return The resized library
+     * @throws IllegalArgumentException if a size is invalid
+     */
+    public WaystoneIconLibrary resize(int newIconSize, int newClusterIconSize) {
+        WaystoneIconLibrary resized = new WaystoneIconLibrary(plugin, newIconSize, newClusterIconSize);
+        synchronized (this) {
+            if (!loaded) {
+                // Nothing decoded yet, the resized library decodes on first use
+                return resized;
+            }
+            resized.sources.putAll(sources);
+            resized.worldVariants.putAll(worldVariants);
+        }
+
+        resized.scaleAll();
+        resized.loaded = true;
+        return resized;
+    }
+
+    /**
+     * Removes every icon of this library from Pl3xMap.
+     * Used before a library with other sizes registers its images under the same keys.
+     * 
+     * @param platform The map to remove the icons from
+     */
+    public void unregisterAll(MapPlatform platform) {
+        for (String key : images.keySet()) {
+            if (platform.hasIcon(key)) {
+                platform.unregisterIcon(key);
+            }
+        }
+    }
+
+    /**
+     * Returns the key of the marker icon for a waystone.
+     * 
+     * @param worldName Name of the world the waystone is in (may be null)
+     * @param state State of the waystone
+     * @return The icon key, falling back to the default icon of the state
+     */
+    public String iconKey(String worldName, State state) {
+        String prefix = worldName != null ? worldVariants.get(worldName) : null;
+        return prefix != null ? prefix + state.key : state.key;
+    }
+
+    /**
+     * Returns the key of the cluster icon for a state.
+     * 
+     * @param state State shown by the cluster
+     * @return The icon key
+     */
+    public String clusterIconKey(State state) {
+        return state.key + CLUSTER_SUFFIX;
+    }
+
+    /**
+     * @return Number of scaled icon images held in memory
+     */
+    public int size() {
+        return images.size();
+    }
+
+    /**
+     * Decodes and scales every icon source.
+     */
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+
+        File iconFolder = new File(plugin.getDataFolder(), ICON_FOLDER);
+
+        // Default icons: data folder overrides, otherwise bundled resources
+        for (State state : State.values()) {
+            BufferedImage source = readFile(new File(iconFolder, state.fileName));
+            if (source == null) {
+                source = readResource(state.fileName);
+            }
+            if (source != null) {
+                sources.put(state.key, source);
+            }
+        }
+
+        // Per-world variants
+        File[] worldFolders = new File(iconFolder, WORLD_ICON_FOLDER).listFiles(File::isDirectory);
+        if (worldFolders != null) {
+            for (File worldFolder : worldFolders) {
+                String prefix = "waystone_" + sanitize(worldFolder.getName()) + "_";
+                BufferedImage[] variants = new BufferedImage[State.values().length];
+                boolean found = false;
+                for (State state : State.values()) {
+                    variants[state.ordinal()] = readFile(new File(worldFolder, state.fileName));
+                    found |= variants[state.ordinal()] != null;
+                }
+                if (!found) {
+                    continue;
+                }
+                for (State state : State.values()) {
+                    BufferedImage source = variants[state.ordinal()];
+                    if (source == null) {
+                        // Missing states of a world reuse the default image under the world's key
+                        source = sources.get(state.key);
+                    }
+                    if (source != null) {
+                        sources.put(prefix + state.key, source);
+                    }
+                }
+                worldVariants.put(worldFolder.getName(), prefix);
+            }
+        }
+
+        scaleAll();
+        loaded = true;
+        plugin.getLogger().info("Loaded " + images.size() + " waystone icon image(s)"
+                + (worldVariants.isEmpty() ? "" : " with variants for " + worldVariants.size() + " world(s)"));
+    }
+
+    /**
+     * Scales every decoded source to this library's sizes.
+     * Only the default icons get a cluster variant.
+     */
+    private void scaleAll() {
+        sources.forEach((key, source) -> put(key, scale(source, iconSize)));
+        for (State state : State.values()) {
+            BufferedImage source = sources.get(state.key);
+            if (source != null) {
+                put(state.key + CLUSTER_SUFFIX, scale(source, clusterIconSize));
+            }
+        }
+    }
+
+    private void put(String key, BufferedImage image) {
+        images.put(key, new IconImage(key, image, "png"));
+    }
+
+    /**
+     * Reads an image from the data folder.
+     * 
+     * @return The decoded image, or null if the file is missing or unreadable
+     */
+    private BufferedImage readFile(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                plugin.getLogger().warning("Failed to read image from " + file.getPath());
+            }
+            return image;
+        } catch (Exception e) {
+            plugin.getLogger().warning("Failed to read image from " + file.getPath() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads an image bundled with the plugin.
+     * 
+     * @return The decoded image, or null if the resource is missing or unreadable
+     */
+    private BufferedImage readResource(String resourcePath) {
+        try (InputStream stream = plugin.getResource(resourcePath)) {
+            if (stream == null) {
+                plugin.getLogger().warning(resourcePath + " not found in plugin resources");
+                return null;
+            }
+            BufferedImage image = ImageIO.read(stream);
+            if (image == null) {
+                plugin.getLogger().warning("Failed to read image from " + resourcePath);
+            }
+            return image;
+        } catch (Exception e) {
+            plugin.getLogger().severe("Failed to load " + resourcePath + ": " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Scales an image to fit a square of the given size, keeping its aspect ratio.
+     * 
+     * Images that already have the target size are returned unchanged.
+     */
+    private static BufferedImage scale(BufferedImage source, int size) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        if (Math.max(width, height) == size) {
+            return source;
+        }
+
+        double factor = (double) size / Math.max(width, height);
+        int scaledWidth = Math.max(1, (int) Math.round(width * factor));
+        int scaledHeight = Math.max(1, (int) Math.round(height * factor));
+
+        BufferedImage scaled = new BufferedImage(scaledWidth, scaledHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    factor < 1 ? RenderingHints.VALUE_INTERPOLATION_BICUBIC
+                               : RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, scaledWidth, scaledHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    /**
+     * Turns a world name into a safe part of an icon key.
+     */
+    private static String sanitize(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_-]", "_");
+    }
+}
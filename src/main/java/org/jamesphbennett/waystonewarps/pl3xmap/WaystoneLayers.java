@@ -0,0 +1,153 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import net.pl3x.map.core.markers.layer.Layer;
+
+/**
+ * The waystone layers of one world: a public layer, an optional locked layer
+ * and an optional density heatmap layer.
+ * 
+ * Responsibilities:
+ * - Route markers to the layer matching the waystone's lock state
+ * - Register, re-attach and clear all layers together
+ * - Hold the clusterer of each layer, since clusters never span both
+ * - Hold the heatmap, which counts the waystones of both layers
+ * - Hold the spatial index of the waystones in both layers, which clusters and heatmap query
+ * 
+ * Keeping locked waystones in their own layer lets map viewers hide them
+ * client-side, and lets each layer use its own update interval and priority.
+ * 
+ * Thread-safe: Immutable apart from the layers' published markers.
+ */
+public final class WaystoneLayers {
+    private final SnapshotLayer publicLayer;
+    private final SnapshotLayer lockedLayer;
+    private final MarkerClusterer publicClusterer;
+    private final MarkerClusterer lockedClusterer;
+    private final DensityHeatmap heatmap;
+    private final WaystoneSpatialIndex spatialIndex;
+
+    /**
+     * Creates the layers of one world.
+     * 
+     * @param publicLayer Layer showing unlocked waystones
+     * @param lockedLayer Layer showing locked waystones, or null if they are hidden
+     * @param publicClusterer Clusterer of the public layer, or null if clustering is disabled
+     * @param lockedClusterer Clusterer of the locked layer, or null if clustering is disabled
+     * @param heatmap Density heatmap of the world, or null if it is disabled
+     * @param spatialIndex Spatial index of the waystones published to both layers
+     * @throws IllegalArgumentException if publicLayer or spatialIndex is null
+     */
+    public WaystoneLayers(SnapshotLayer publicLayer, SnapshotLayer lockedLayer,
+                          MarkerClusterer publicClusterer, MarkerClusterer lockedClusterer,
+                          DensityHeatmap heatmap, WaystoneSpatialIndex spatialIndex) {
+        if (publicLayer == null) {
+            throw new IllegalArgumentException("Public layer cannot be null");
+        }
+        if (spatialIndex == null) {
+            throw new IllegalArgumentException("Spatial index cannot be null");
+        }
+
+        this.publicLayer = publicLayer;
+        this.lockedLayer = lockedLayer;
+        this.publicClusterer = publicClusterer;
+        this.lockedClusterer = lockedClusterer;
+        this.heatmap = heatmap;
+        this.spatialIndex = spatialIndex;
+    }
+
+    /**
+     * @param locked Lock state of a waystone
+     * @return The layer showing waystones with that lock state, or null if they are hidden
+     */
+    public SnapshotLayer getLayer(boolean locked) {
+        return locked ? lockedLayer : publicLayer;
+    }
+
+    /**
+     * @param locked Lock state of a waystone
+     * @return The clusterer of the layer with that lock state, or null if there is none
+     */
+    public MarkerClusterer getClusterer(boolean locked) {
+        return locked ? lockedClusterer : publicClusterer;
+    }
+
+    /**
+     * @return The density heatmap of the world, or null if it is disabled
+     */
+    public DensityHeatmap getHeatmap() {
+        return heatmap;
+    }
+
+    /**
+     * @return Spatial index of the waystones published to the public and locked layers
+     */
+    public WaystoneSpatialIndex getSpatialIndex() {
+        return spatialIndex;
+    }
+
+    /**
+     * Returns the layers of the same world with another locked layer.
+     * The public layer, the heatmap, the spatial index and their contents are kept.
+     * 
+     * @param layer Layer showing locked waystones, or null if they are hidden
+     * @param clusterer Clusterer of the locked layer, or null if clustering is disabled
+     * @return The new world layers
+     */
+    public WaystoneLayers withLockedLayer(SnapshotLayer layer, MarkerClusterer clusterer) {
+        return new WaystoneLayers(publicLayer, layer, publicClusterer, clusterer, heatmap, spatialIndex);
+    }
+
+    /**
+     * Registers all layers with a world, skipping layers that are already registered there.
+     * 
+     * @param world The world to register the layers with
+     * @return false if another layer occupies one of the keys, true otherwise
+     */
+    public boolean attach(MapPlatform.MapWorld world) {
+        return attach(world, publicLayer)
+                && (lockedLayer == null || attach(world, lockedLayer))
+                && (heatmap == null || attach(world, heatmap.getLayer()));
+    }
+
+    private static boolean attach(MapPlatform.MapWorld world, SnapshotLayer layer) {
+        Layer existing = world.getLayer(layer.getKey());
+        if (existing == null) {
+            world.registerLayer(layer);
+            return true;
+        }
+        return existing == layer;
+    }
+
+    /**
+     * Checks whether all layers are registered with a world.
+     * 
+     * @param world The world to check
+     * @return true if the world shows these layers
+     */
+    public boolean isAttachedTo(MapPlatform.MapWorld world) {
+        return world.getLayer(publicLayer.getKey()) == publicLayer
+                && (lockedLayer == null || world.getLayer(lockedLayer.getKey()) == lockedLayer)
+                && (heatmap == null || world.getLayer(heatmap.getLayer().getKey()) == heatmap.getLayer());
+    }
+
+    /**
+     * Removes all markers from all layers.
+     */
+    public void clear() {
+        publicLayer.clear();
+        if (lockedLayer != null) {
+            lockedLayer.clear();
+        }
+        if (heatmap != null) {
+            heatmap.clear();
+        }
+        spatialIndex.clear();
+    }
+
+    /**
+     * @return Number of waystone markers published across the public and locked layers
+     */
+    public int size() {
+        return publicLayer.size() + (lockedLayer == null ? 0 : lockedLayer.size());
+    }
+}
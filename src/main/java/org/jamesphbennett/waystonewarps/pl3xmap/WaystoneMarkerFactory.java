@@ -1,253 +1,267 @@
 package org.jamesphbennett.waystonewarps.pl3xmap;
 
-import dev.mizarc.waystonewarps.domain.warps.Warp;
-import net.pl3x.map.core.Pl3xMap;
-import net.pl3x.map.core.image.IconImage;
 import net.pl3x.map.core.markers.Point;
 import net.pl3x.map.core.markers.marker.Icon;
 import net.pl3x.map.core.markers.marker.Marker;
 import net.pl3x.map.core.markers.option.Options;
-import org.bukkit.Bukkit;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.plugin.Plugin;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.InputStream;
 import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.UUID;
 
 /**
  * Factory for creating waystone markers with custom icons and tooltips.
  * 
  * Responsibilities:
- * - Register custom icon images with Pl3xMap
+ * - Register custom icon images with Pl3xMap via {@link WaystoneIconLibrary}
  * - Create marker objects with appropriate icons (locked/unlocked)
- * - Generate HTML tooltips with waystone information
+ * - Generate HTML tooltips with waystone information via {@link TooltipTemplate}
+ * - Reuse rendered tooltips of unchanged waystones via a bounded cache
+ * - Rescale icons when the icon size changes at runtime
  * 
- * Security: All user-generated content is properly escaped to prevent XSS attacks.
+ * Security: All user-generated content is escaped by the tooltip template.
  */
 public class WaystoneMarkerFactory {
-    private static final String WAYSTONE_ICON_KEY = "waystone_icon";
-    private static final String WAYSTONE_LOCKED_ICON_KEY = "waystone_locked_icon";
-    private static final String WAYSTONE_ICON_PATH = "waystone_icon.png";
-    private static final String WAYSTONE_LOCKED_ICON_PATH = "waystone_locked_icon.png";
-    
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter
-            .ofPattern("yyyy-MM-dd HH:mm:ss")
-            .withZone(ZoneId.systemDefault());
-    
-    private static final String TOOLTIP_STYLE_CONTAINER = "padding: 12px; font-family: sans-serif; min-width: 200px;";
-    private static final String TOOLTIP_STYLE_HEADER = "margin: 0 0 12px 0; color: #5c7cfa; border-bottom: 2px solid #5c7cfa; padding-bottom: 4px;";
-    private static final String TOOLTIP_STYLE_TABLE = "width: 100%; border-collapse: collapse;";
-    private static final String TOOLTIP_STYLE_CELL_LABEL = "padding: 4px 8px; font-weight: bold; color: #495057;";
-    private static final String TOOLTIP_STYLE_CELL_VALUE = "padding: 4px 8px; color: #212529;";
+    private static final String MARKER_KEY_PREFIX = "waystone_";
+    private static final String CLUSTER_KEY_PREFIX = "waystone_cluster_";
+    private static final double CLUSTER_ICON_SCALE = 1.5;
     
     private final Plugin plugin;
-    private final int iconSize;
+    private volatile int iconSize;
+    private volatile WaystoneIconLibrary icons;
+    private final TooltipCache tooltipCache;
+    private final TooltipTemplate tooltipTemplate = new TooltipTemplate();
+    private final OwnerNameCache ownerNames;
 
     /**
      * Creates a new marker factory.
      * 
      * @param plugin The plugin instance for resource access and logging
      * @param iconSize Size of waystone icons in pixels
-     * @throws IllegalArgumentException if plugin is null or iconSize is invalid
+     * @param tooltipCacheSize Maximum number of cached tooltips (0 disables caching)
+     * @param ownerNames Non-blocking source of owner names for tooltips
+     * @throws IllegalArgumentException if plugin or ownerNames is null or iconSize is invalid
      */
-    public WaystoneMarkerFactory(Plugin plugin, int iconSize) {
+    public WaystoneMarkerFactory(Plugin plugin, int iconSize, int tooltipCacheSize, OwnerNameCache ownerNames) {
         if (plugin == null) {
             throw new IllegalArgumentException("Plugin cannot be null");
         }
+        if (ownerNames == null) {
+            throw new IllegalArgumentException("Owner name cache cannot be null");
+        }
         if (iconSize <= 0) {
             throw new IllegalArgumentException("Icon size must be positive");
         }
         
         this.plugin = plugin;
         this.iconSize = iconSize;
+        this.icons = createIconLibrary(iconSize);
+        this.tooltipCache = new TooltipCache(Math.max(0, tooltipCacheSize));
+        this.ownerNames = ownerNames;
+    }
+
+    /**
+     * @return The cache holding rendered tooltips
+     */
+    public TooltipCache getTooltipCache() {
+        return tooltipCache;
+    }
+
+    /**
+     * @return The template rendering tooltip HTML, including its size statistics
+     */
+    public TooltipTemplate getTooltipTemplate() {
+        return tooltipTemplate;
     }
 
     /**
      * Registers waystone icons with Pl3xMap.
      * 
-     * Idempotent: Can be called multiple times safely. Icons are only
-     * registered if not already present in the Pl3xMap registry.
+     * Idempotent: Can be called multiple times safely. Icon images are decoded
+     * once and only registered if not already present in the Pl3xMap registry.
+     * 
+     * @param platform The map to register the icons with
      */
-    public void registerIcons() {
-        registerIcon(WAYSTONE_ICON_PATH, WAYSTONE_ICON_KEY, "waystone icon");
-        registerIcon(WAYSTONE_LOCKED_ICON_PATH, WAYSTONE_LOCKED_ICON_KEY, "locked waystone icon");
+    public void registerIcons(MapPlatform platform) {
+        icons.registerAll(platform);
     }
 
     /**
-     * Registers a single icon with Pl3xMap.
-     * 
-     * Loads the icon image from plugin resources and registers it.
-     * Skips registration if the icon is already registered.
+     * Replaces the icons with ones scaled to a new size, runs on the main thread.
+     * Markers created afterwards use the new size; existing markers keep theirs until rebuilt.
      * 
-     * @param resourcePath Path to icon image in plugin resources
-     * @param iconKey Unique identifier for the icon
-     * @param description Human-readable description for logging
+     * @param platform The map to re-register the icons with
+     * @param newIconSize Size of waystone icons in pixels
+     * @throws IllegalArgumentException if newIconSize is invalid
      */
-    private void registerIcon(String resourcePath, String iconKey, String description) {
-        // Check if already registered to avoid duplicate registration errors
-        if (Pl3xMap.api().getIconRegistry().has(iconKey)) {
-            return;
-        }
-        
-        InputStream stream = null;
-        try {
-            stream = plugin.getResource(resourcePath);
-            if (stream == null) {
-                plugin.getLogger().warning(resourcePath + " not found in plugin resources");
-                return;
-            }
-            
-            BufferedImage image = ImageIO.read(stream);
-            if (image == null) {
-                plugin.getLogger().warning("Failed to read image from " + resourcePath);
-                return;
-            }
-            
-            Pl3xMap.api().getIconRegistry().register(new IconImage(iconKey, image, "png"));
-            plugin.getLogger().info("Registered " + description);
-            
-        } catch (Exception e) {
-            plugin.getLogger().severe("Failed to register " + description + ": " + e.getMessage());
-            e.printStackTrace();
-        } finally {
-            // Ensure stream is always closed
-            if (stream != null) {
-                try {
-                    stream.close();
-                } catch (Exception e) {
-                    plugin.getLogger().warning("Failed to close resource stream: " + e.getMessage());
-                }
-            }
+    public void setIconSize(MapPlatform platform, int newIconSize) {
+        if (newIconSize <= 0) {
+            throw new IllegalArgumentException("Icon size must be positive");
         }
+
+        // The decoded images are kept, only rescaled
+        WaystoneIconLibrary previous = icons;
+        icons = previous.resize(newIconSize, clusterIconSize(newIconSize));
+        iconSize = newIconSize;
+        previous.unregisterAll(platform);
+        icons.registerAll(platform);
+    }
+
+    /**
+     * @return Size of waystone icons in pixels
+     */
+    public int getIconSize() {
+        return iconSize;
+    }
+
+    private WaystoneIconLibrary createIconLibrary(int size) {
+        return new WaystoneIconLibrary(plugin, size, clusterIconSize(size));
+    }
+
+    private static int clusterIconSize(int iconSize) {
+        return (int) Math.round(iconSize * CLUSTER_ICON_SCALE);
     }
 
     /**
      * Creates a marker for a waystone with appropriate icon and tooltip.
      * 
-     * @param warp The waystone to create a marker for
+     * Safe to call off the main thread: no Bukkit state is accessed.
+     * 
+     * @param warpId Id of the waystone
+     * @param fingerprint Captured properties of the waystone
+     * @param creationTime When the waystone was created, or null if unknown
+     * @param worldName Name of the world the waystone is in
      * @return The created marker
-     * @throws IllegalArgumentException if warp is null
+     * @throws IllegalArgumentException if warpId or fingerprint is null
      */
-    public Marker<?> createMarker(Warp warp) {
-        if (warp == null) {
-            throw new IllegalArgumentException("Warp cannot be null");
+    public Marker<?> createMarker(UUID warpId, WarpFingerprint fingerprint, Instant creationTime, String worldName) {
+        if (warpId == null || fingerprint == null) {
+            throw new IllegalArgumentException("Waystone cannot be null");
         }
-        
+
+        return icon(warpId, fingerprint.x(), fingerprint.z(), fingerprint.locked(), worldName,
+                buildTooltip(warpId, fingerprint, creationTime, worldName));
+    }
+
+    /**
+     * Recreates a waystone marker from persisted data without rendering its tooltip.
+     * 
+     * @param warpId Id of the waystone
+     * @param fingerprint Fingerprint the marker was built from
+     * @param tooltip Previously rendered tooltip HTML
+     * @param worldName Name of the world the waystone is in
+     * @return The created marker
+     */
+    public Marker<?> restoreMarker(UUID warpId, WarpFingerprint fingerprint, String tooltip, String worldName) {
+        return icon(warpId, fingerprint.x(), fingerprint.z(), fingerprint.locked(), worldName, tooltip);
+    }
+
+    /**
+     * Returns the tooltip HTML of a marker created by this factory.
+     * 
+     * @param marker The marker
+     * @return The tooltip HTML, or null if the marker has none
+     */
+    public static String tooltipOf(Marker<?> marker) {
+        Options options = marker.getOptions();
+        if (options == null || options.getTooltip() == null) {
+            return null;
+        }
+        return options.getTooltip().getContent();
+    }
+
+    /**
+     * Creates a cluster marker standing in for several nearby waystones.
+     * 
+     * @param clusterId Unique id of the cluster (e.g. its grid cell)
+     * @param x Block X coordinate of the cluster center
+     * @param z Block Z coordinate of the cluster center
+     * @param count Number of waystones in the cluster
+     * @param lockedCount Number of private waystones in the cluster
+     * @param sampleNames Names of some of the waystones, shown in the tooltip
+     * @return The created marker
+     */
+    public Marker<?> createClusterMarker(String clusterId, int x, int z, int count, int lockedCount,
+                                         List<String> sampleNames) {
+        // Use the locked icon only if every waystone in the cluster is private
+        String iconKey = icons.clusterIconKey(
+                lockedCount == count ? WaystoneIconLibrary.State.LOCKED : WaystoneIconLibrary.State.PUBLIC);
+
+        Options options = Options.builder()
+                .tooltipContent(tooltipTemplate.renderCluster(count, lockedCount, sampleNames))
+                .build();
+
+        Icon icon = new Icon(clusterKey(clusterId), Point.of(x, z), iconKey, iconSize * CLUSTER_ICON_SCALE);
+        icon.setOptions(options);
+
+        return icon;
+    }
+
+    /**
+     * Creates a waystone icon marker.
+     */
+    private Icon icon(UUID warpId, int x, int z, boolean locked, String worldName, String tooltip) {
         // Choose icon based on locked state
-        String iconKey = warp.isLocked() ? WAYSTONE_LOCKED_ICON_KEY : WAYSTONE_ICON_KEY;
+        String iconKey = icons.iconKey(worldName,
+                locked ? WaystoneIconLibrary.State.LOCKED : WaystoneIconLibrary.State.PUBLIC);
 
         // Create marker with tooltip
         Options options = Options.builder()
-                .tooltipContent(buildTooltip(warp))
+                .tooltipContent(tooltip)
                 .build();
 
-        Point point = Point.of(warp.getPosition().getX(), warp.getPosition().getZ());
-        Icon icon = new Icon("waystone_" + warp.getId(), point, iconKey, (double) iconSize);
+        Icon icon = new Icon(markerKey(warpId), Point.of(x, z), iconKey, (double) iconSize);
         icon.setOptions(options);
-        
+
         return icon;
     }
 
     /**
-     * Builds an HTML tooltip for a waystone marker.
-     * 
-     * Generates a formatted HTML table with waystone information including
-     * name, owner, access status, world, coordinates, and creation timestamp.
+     * Returns the Pl3xMap marker key used for a waystone.
      * 
-     * Security: All user-generated content is sanitized via escapeHtml
-     * to prevent XSS attacks.
-     * 
-     * @param warp The waystone to generate a tooltip for
-     * @return HTML string for the tooltip
+     * @param warpId The waystone id
+     * @return The marker key
      */
-    private String buildTooltip(Warp warp) {
-        StringBuilder tooltip = new StringBuilder(512);
-        
-        // Get waystone data with null safety
-        OfflinePlayer owner = Bukkit.getOfflinePlayer(warp.getPlayerId());
-        String ownerName = owner.getName();
-        if (ownerName == null) {
-            ownerName = "Unknown";
-        }
-        
-        String lockStatus = warp.isLocked() 
-            ? "<span style='color: #ff6b6b;'>🔒 Private</span>"
-            : "<span style='color: #51cf66;'>🔓 Public</span>";
-        
-        org.bukkit.World world = Bukkit.getWorld(warp.getWorldId());
-        String worldName = world != null ? world.getName() : "Unknown World";
-        
-        Instant creationInstant = warp.getCreationTime();
-        String creationTime = creationInstant != null 
-            ? DATE_FORMATTER.format(creationInstant)
-            : "Unknown";
-
-        // Build HTML tooltip with proper escaping
-        tooltip.append("<div style='").append(TOOLTIP_STYLE_CONTAINER).append("'>")
-               .append("<h3 style='").append(TOOLTIP_STYLE_HEADER).append("'>")
-               .append(escapeHtml(warp.getName()))
-               .append("</h3>")
-               .append("<table style='").append(TOOLTIP_STYLE_TABLE).append("'>");
-        
-        addTableRow(tooltip, "Owner:", escapeHtml(ownerName));
-        addTableRow(tooltip, "Access:", lockStatus); // lockStatus is already safe HTML
-        addTableRow(tooltip, "World:", escapeHtml(worldName));
-        
-        // Location row with monospace font
-        tooltip.append("<tr>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_LABEL).append("'>Location:</td>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_VALUE).append(" font-family: monospace;'>")
-               .append(warp.getPosition().getX()).append(", ")
-               .append(warp.getPosition().getY()).append(", ")
-               .append(warp.getPosition().getZ())
-               .append("</td></tr>");
-        
-        // Creation timestamp row
-        tooltip.append("<tr>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_LABEL).append("'>Created:</td>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_VALUE).append(" color: #868e96; font-size: 12px;'>")
-               .append(escapeHtml(creationTime))
-               .append("</td></tr>")
-               .append("</table>")
-               .append("</div>");
-
-        return tooltip.toString();
+    public static String markerKey(UUID warpId) {
+        return MARKER_KEY_PREFIX + warpId;
     }
 
     /**
-     * Adds a table row to the tooltip HTML.
+     * Returns the Pl3xMap marker key used for a cluster.
      * 
-     * @param tooltip StringBuilder to append to
-     * @param label Row label (left column)
-     * @param value Row value (right column)
+     * @param clusterId Unique id of the cluster
+     * @return The marker key
      */
-    private void addTableRow(StringBuilder tooltip, String label, String value) {
-        tooltip.append("<tr>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_LABEL).append("'>").append(label).append("</td>")
-               .append("<td style='").append(TOOLTIP_STYLE_CELL_VALUE).append("'>").append(value).append("</td>")
-               .append("</tr>");
+    public static String clusterKey(String clusterId) {
+        return CLUSTER_KEY_PREFIX + clusterId;
     }
 
     /**
-     * Escapes HTML special characters to prevent XSS attacks.
+     * Returns the HTML tooltip for a waystone marker.
+     * 
+     * Serves the cached HTML when the waystone and its owner name are
+     * unchanged since the tooltip was last rendered. Owners whose name is not
+     * resolved yet are shown with a placeholder until the name arrives.
      * 
-     * @param text Text to escape
-     * @return HTML-safe text
+     * @param warpId Id of the waystone to get a tooltip for
+     * @param warp Captured properties of the waystone
+     * @param creationTime When the waystone was created, or null if unknown
+     * @param worldName Name of the world the waystone is in
+     * @return HTML string for the tooltip
      */
-    private String escapeHtml(String text) {
-        if (text == null) {
-            return "";
-        }
-        
-        return text
-                .replace("&", "&amp;")
-                .replace("<", "&lt;")
-                .replace(">", "&gt;")
-                .replace("\"", "&quot;")
-                .replace("'", "&#39;");
+    private String buildTooltip(UUID warpId, WarpFingerprint warp, Instant creationTime, String worldName) {
+        // Never blocks; unresolved owners get a placeholder
+        String ownerName = ownerNames.getName(warp.ownerId());
+
+        TooltipFingerprint fingerprint = new TooltipFingerprint(warp, ownerName, creationTime);
+        return tooltipCache.get(warpId, fingerprint,
+                () -> tooltipTemplate.renderWaystone(warp, creationTime, ownerName, worldName));
+    }
+
+    /**
+     * Everything a rendered tooltip depends on.
+     */
+    private record TooltipFingerprint(WarpFingerprint warp, String ownerName, Instant creationTime) {
     }
 }
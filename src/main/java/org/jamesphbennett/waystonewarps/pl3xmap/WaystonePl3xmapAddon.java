@@ -3,10 +3,16 @@ package org.jamesphbennett.waystonewarps.pl3xmap;
 import dev.mizarc.waystonewarps.WaystoneWarps;
 import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
 import net.pl3x.map.core.Pl3xMap;
+import org.bukkit.event.HandlerList;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 
 /**
  * Main plugin class for WaystoneWarps-Pl3xMap integration.
@@ -18,16 +24,22 @@ import java.lang.reflect.Field;
  * - Toggleable layer controls for showing/hiding waystones
  * - Rich tooltips with waystone information
  * - Configurable visibility for private/locked waystones
- * - Periodic auto-refresh to detect waystone changes
+ * - Event-driven updates with periodic auto-refresh as a safety net
  * - Automatic recovery from Pl3xMap reloads
  * - Manual reload command for operators
+ * - Config reload that applies only the changed settings
+ * - Refresh metrics via /waystones-map stats and an optional Prometheus file
  * 
  * Dependencies: WaystoneWarps 0.3.5+, Pl3xMap 1.21.5+, Paper/Purpur/Folia 1.21.4+
  */
 public class WaystonePl3xmapAddon extends JavaPlugin {
     private Pl3xmapLayerManager layerManager;
     private WarpRepository warpRepository;
-    private WaystoneUpdateTask updateTask;
+    private final List<WaystoneUpdateTask> updateTasks = new ArrayList<>();
+    private RefreshCoordinator refreshCoordinator;
+    private PrometheusFileExporter metricsExporter;
+    private WaystoneChangeListener changeListener;
+    private AddonSettings settings;
 
     @Override
     public void onEnable() {
@@ -55,10 +67,13 @@ public class WaystonePl3xmapAddon extends JavaPlugin {
     @Override
     public void onDisable() {
         try {
-            // Stop update task
-            if (updateTask != null) {
-                updateTask.stop();
-                updateTask = null;
+            // Stop update tasks
+            stopRefreshing();
+
+            // Write final metrics
+            if (metricsExporter != null) {
+                metricsExporter.stop();
+                metricsExporter = null;
             }
             
             // Shutdown layer manager
@@ -144,48 +159,66 @@ public class WaystonePl3xmapAddon extends JavaPlugin {
         }
 
         // Read configuration
-        boolean showLocked = getConfig().getBoolean("display.show-locked-waystones", true);
-        int iconSize = getConfig().getInt("display.icon-size", 16);
-        
-        // Validate icon size
-        if (iconSize <= 0 || iconSize > 128) {
-            getLogger().warning("Invalid icon size: " + iconSize + ", using default 16px");
-            iconSize = 16;
-        }
+        settings = AddonSettings.read(this);
 
         // Initialize layer manager
-        layerManager = new Pl3xmapLayerManager(this, warpRepository, showLocked, iconSize);
+        layerManager = new Pl3xmapLayerManager(this, warpRepository, settings.publicLayer(), settings.lockedLayer(),
+                settings.iconSize(), settings.tooltipCacheSize(), settings.clusterSettings(),
+                settings.heatmapSettings(), settings.sliceSettings(), settings.persistMarkers());
         layerManager.initialize();
-        
-        getLogger().info("Pl3xMap waystone layer initialized successfully!");
-        getLogger().info("Show locked waystones: " + showLocked);
-        getLogger().info("Icon size: " + iconSize + "px");
 
-        // Start periodic update task if enabled
-        boolean autoRefreshEnabled = getConfig().getBoolean("auto-refresh.enabled", true);
-        int refreshInterval = getConfig().getInt("auto-refresh.interval", 60);
+        // Merge overlapping refresh requests from all sources
+        refreshCoordinator = new RefreshCoordinator(this, layerManager, debounceTicks(settings));
+
+        // Keep owner names of joining players up to date
+        getServer().getPluginManager().registerEvents(layerManager.getOwnerNameCache(), this);
         
-        // Validate refresh interval
-        if (refreshInterval <= 0) {
-            getLogger().info("Auto-refresh disabled (interval <= 0)");
-        } else if (autoRefreshEnabled) {
-            updateTask = new WaystoneUpdateTask(this, layerManager, warpRepository, refreshInterval);
-            updateTask.start();
-        } else {
-            getLogger().info("Auto-refresh disabled in configuration");
+        getLogger().info("Pl3xMap waystone layer initialized successfully!");
+        getLogger().info("Show locked waystones: " + settings.showLocked());
+        getLogger().info("Public layer: " + settings.publicLayer());
+        if (settings.lockedLayer() != null) {
+            getLogger().info("Locked layer: " + settings.lockedLayer());
+        }
+        getLogger().info("Icon size: " + settings.iconSize() + "px");
+        getLogger().info("Tooltip cache size: " + settings.tooltipCacheSize());
+        getLogger().info("Marker snapshot: " + (settings.persistMarkers() ? "enabled" : "disabled"));
+        if (settings.clusterSettings() != null) {
+            getLogger().info("Clustering: cell size " + settings.clusterSettings().cellSize() + " blocks, min size "
+                    + settings.clusterSettings().minSize());
+        }
+        if (settings.heatmapSettings() != null) {
+            getLogger().info("Density heatmap: " + settings.heatmapSettings().cellSize() + " block cells");
         }
+        if (settings.sliceSettings() != null) {
+            getLogger().info("Time-sliced full refresh: " + settings.sliceSettings().tickBudgetMillis()
+                    + "ms per tick, pausing above " + settings.sliceSettings().backoffMillis() + "ms MSPT");
+        }
+
+        // React to waystone changes and start the periodic checks
+        startRefreshing(settings.refresh());
 
         // Register reload command
         if (getCommand("waystones-reload-map") != null) {
-            getCommand("waystones-reload-map").setExecutor(new ReloadCommand(this, layerManager));
+            getCommand("waystones-reload-map").setExecutor(new ReloadCommand(this, refreshCoordinator));
             getLogger().info("Registered /waystones-reload-map command");
         } else {
             getLogger().warning("Failed to register /waystones-reload-map command");
         }
 
+        // Register map command
+        if (getCommand("waystones-map") != null) {
+            getCommand("waystones-map").setExecutor(new MapCommand(this, layerManager));
+            getLogger().info("Registered /waystones-map command");
+        } else {
+            getLogger().warning("Failed to register /waystones-map command");
+        }
+
+        // Export metrics for Prometheus if enabled
+        startMetricsExporter(settings);
+
         // Register Pl3xMap reload listener for automatic recovery
         try {
-            Pl3xMapReloadListener reloadListener = new Pl3xMapReloadListener(this, layerManager);
+            Pl3xMapReloadListener reloadListener = new Pl3xMapReloadListener(this, layerManager, refreshCoordinator);
             Pl3xMap.api().getEventRegistry().register(reloadListener);
             getLogger().info("Registered Pl3xMap reload listener for automatic recovery");
         } catch (Exception e) {
@@ -193,4 +226,159 @@ public class WaystonePl3xmapAddon extends JavaPlugin {
             getLogger().warning("Automatic recovery from /map reload may not work");
         }
     }
+
+    /**
+     * Re-reads config.yml and applies only what changed.
+     * 
+     * Icon size changes rescale the icons and resize the published markers,
+     * layer changes update the layers in place or add/drop the locked layers,
+     * and interval changes reschedule the periodic checks. None of them
+     * rebuilds markers from the repository. Settings that are baked into the
+     * caches are reported as needing a restart.
+     * 
+     * @return Descriptions of the applied changes, empty if nothing changed
+     */
+    public List<String> reloadSettings() {
+        List<String> changes = new ArrayList<>();
+        if (layerManager == null || settings == null) {
+            changes.add("integration is not running, nothing to reload");
+            return changes;
+        }
+
+        reloadConfig();
+        AddonSettings previous = settings;
+        AddonSettings next = AddonSettings.read(this);
+        settings = next;
+
+        if (previous.iconSize() != next.iconSize()) {
+            layerManager.setIconSize(next.iconSize());
+            changes.add("icon size " + previous.iconSize() + "px -> " + next.iconSize() + "px");
+        }
+        if (!Objects.equals(previous.publicLayer(), next.publicLayer())
+                || !Objects.equals(previous.lockedLayer(), next.lockedLayer())) {
+            layerManager.setLayerSettings(next.publicLayer(), next.lockedLayer());
+            changes.add(previous.showLocked() == next.showLocked() ? "layer settings"
+                    : (next.showLocked() ? "showing" : "hiding") + " locked waystones");
+        }
+        if (!Objects.equals(previous.sliceSettings(), next.sliceSettings())) {
+            layerManager.setSliceSettings(next.sliceSettings());
+            changes.add("full refresh time slicing");
+        }
+        if (previous.debounceMillis() != next.debounceMillis()) {
+            refreshCoordinator.setDebounceTicks(debounceTicks(next));
+            changes.add("refresh debounce " + next.debounceMillis() + "ms");
+        }
+        if (!previous.refresh().equals(next.refresh())) {
+            stopRefreshing();
+            startRefreshing(next.refresh());
+            changes.add("refresh intervals");
+        }
+        if (!Objects.equals(previous.metricsFile(), next.metricsFile())
+                || previous.metricsInterval() != next.metricsInterval()) {
+            if (metricsExporter != null) {
+                metricsExporter.stop();
+                metricsExporter = null;
+            }
+            startMetricsExporter(next);
+            changes.add("metrics export");
+        }
+
+        if (previous.tooltipCacheSize() != next.tooltipCacheSize()) {
+            changes.add("tooltip cache size (takes effect after a restart)");
+        }
+        if (!Objects.equals(previous.clusterSettings(), next.clusterSettings())) {
+            changes.add("clustering (takes effect after a restart)");
+        }
+        if (!Objects.equals(previous.heatmapSettings(), next.heatmapSettings())) {
+            changes.add("density heatmap (takes effect after a restart)");
+        }
+        if (previous.persistMarkers() != next.persistMarkers()) {
+            changes.add("marker snapshot (takes effect after a restart)");
+        }
+
+        getLogger().info("Reloaded configuration: " + (changes.isEmpty() ? "no changes" : String.join(", ", changes)));
+        return changes;
+    }
+
+    /**
+     * Registers the waystone event listener and starts the periodic change checks.
+     * 
+     * @param refresh Refresh settings to apply
+     */
+    private void startRefreshing(AddonSettings.RefreshSettings refresh) {
+        // React to waystone changes as they happen
+        if (refresh.enabled() && refresh.eventDriven()) {
+            Plugin waystonePlugin = getServer().getPluginManager().getPlugin("WaystoneWarps");
+            changeListener = new WaystoneChangeListener(this, waystonePlugin, layerManager, refreshCoordinator);
+            getServer().getPluginManager().registerEvents(changeListener, this);
+            getLogger().info("Event-driven waystone updates enabled");
+        }
+
+        // Worlds with their own interval are checked by their own task
+        Map<String, Integer> worldIntervals = refresh.worldIntervals();
+
+        // Validate refresh interval
+        if (!refresh.enabled()) {
+            getLogger().info("Auto-refresh disabled in configuration");
+            return;
+        }
+
+        if (refresh.interval() <= 0) {
+            getLogger().info("Auto-refresh disabled (interval <= 0)");
+        } else {
+            startUpdateTask(refresh.interval(), WorldScope.allExcept(worldIntervals.keySet()));
+        }
+
+        worldIntervals.forEach((worldName, interval) -> {
+            if (interval > 0) {
+                startUpdateTask(interval, WorldScope.only(Set.of(worldName)));
+            } else {
+                getLogger().info("Periodic waystone refresh disabled for world " + worldName);
+            }
+        });
+    }
+
+    /**
+     * Stops the periodic change checks and unregisters the waystone event listener.
+     */
+    private void stopRefreshing() {
+        for (WaystoneUpdateTask updateTask : updateTasks) {
+            updateTask.stop();
+        }
+        updateTasks.clear();
+
+        if (changeListener != null) {
+            HandlerList.unregisterAll(changeListener);
+            changeListener = null;
+        }
+    }
+
+    /**
+     * Starts a periodic change check.
+     * 
+     * @param intervalSeconds Interval between checks in seconds
+     * @param scope Worlds the check covers
+     */
+    private void startUpdateTask(int intervalSeconds, WorldScope scope) {
+        WaystoneUpdateTask updateTask = new WaystoneUpdateTask(this, refreshCoordinator, intervalSeconds, scope);
+        updateTask.start();
+        updateTasks.add(updateTask);
+    }
+
+    /**
+     * Starts writing the Prometheus metrics file if it is enabled.
+     * 
+     * @param settings Settings holding the metrics file and interval
+     */
+    private void startMetricsExporter(AddonSettings settings) {
+        if (settings.metricsFile() != null) {
+            metricsExporter = new PrometheusFileExporter(this, layerManager.getMetrics(), settings.metricsFile(),
+                    settings.metricsInterval());
+            metricsExporter.start();
+        }
+    }
+
+    private static long debounceTicks(AddonSettings settings) {
+        return (settings.debounceMillis() + 49) / 50;
+    }
 }
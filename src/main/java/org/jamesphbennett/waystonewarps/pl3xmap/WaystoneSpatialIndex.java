@@ -0,0 +1,251 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Uniform grid index over the X/Z positions of the waystones in one world.
+ * 
+ * Waystones are bucketed into square cells, so rectangle and radius queries
+ * only visit the cells that overlap the query area instead of every waystone.
+ * The index is updated incrementally as waystones are added, moved or removed.
+ * Grid-based views such as marker clusters and the density heatmap query it
+ * with their own, usually larger, cell size; see {@link #cellKeyAt(int, int, int)}.
+ * 
+ * Thread-safe: All methods are synchronized on the index instance.
+ */
+public class WaystoneSpatialIndex {
+    private final int cellSize;
+    private final Map<Long, List<Entry>> cells;
+    private final Map<UUID, Entry> entries;
+
+    /**
+     * Creates a new empty index.
+     * 
+     * @param cellSize Edge length of a grid cell in blocks
+     * @throws IllegalArgumentException if cellSize is not positive
+     */
+    public WaystoneSpatialIndex(int cellSize) {
+        if (cellSize <= 0) {
+            throw new IllegalArgumentException("Cell size must be positive");
+        }
+
+        this.cellSize = cellSize;
+        this.cells = new HashMap<>();
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * Adds a waystone or moves it to a new position.
+     * 
+     * @param warpId Id of the waystone
+     * @param x Block X coordinate
+     * @param z Block Z coordinate
+     */
+    public synchronized void put(UUID warpId, int x, int z) {
+        Entry previous = entries.get(warpId);
+        if (previous != null) {
+            if (previous.x() == x && previous.z() == z) {
+                return;
+            }
+            removeFromCell(previous);
+        }
+
+        Entry entry = new Entry(warpId, x, z);
+        entries.put(warpId, entry);
+        cells.computeIfAbsent(cellKey(cell(x), cell(z)), k -> new ArrayList<>()).add(entry);
+    }
+
+    /**
+     * Removes a waystone from the index.
+     * 
+     * @param warpId Id of the waystone
+     * @return true if the waystone was indexed
+     */
+    public synchronized boolean remove(UUID warpId) {
+        Entry entry = entries.remove(warpId);
+        if (entry == null) {
+            return false;
+        }
+
+        removeFromCell(entry);
+        return true;
+    }
+
+    /**
+     * Returns all waystones inside an axis-aligned rectangle (inclusive).
+     * 
+     * @param minX Minimum block X coordinate
+     * @param minZ Minimum block Z coordinate
+     * @param maxX Maximum block X coordinate
+     * @param maxZ Maximum block Z coordinate
+     * @return Waystones inside the rectangle
+     */
+    public synchronized List<Entry> queryRect(int minX, int minZ, int maxX, int maxZ) {
+        List<Entry> result = new ArrayList<>();
+        int minCellX = cell(minX);
+        int maxCellX = cell(maxX);
+        int minCellZ = cell(minZ);
+        int maxCellZ = cell(maxZ);
+
+        // Huge rectangles touch more cells than exist; scan the occupied cells instead
+        long cellCount = (long) (maxCellX - minCellX + 1) * (maxCellZ - minCellZ + 1);
+        if (cellCount > cells.size()) {
+            for (Entry entry : entries.values()) {
+                if (entry.x() >= minX && entry.x() <= maxX && entry.z() >= minZ && entry.z() <= maxZ) {
+                    result.add(entry);
+                }
+            }
+            return result;
+        }
+
+        for (int cx = minCellX; cx <= maxCellX; cx++) {
+            for (int cz = minCellZ; cz <= maxCellZ; cz++) {
+                List<Entry> cell = cells.get(cellKey(cx, cz));
+                if (cell == null) continue;
+
+                for (Entry entry : cell) {
+                    if (entry.x() >= minX && entry.x() <= maxX && entry.z() >= minZ && entry.z() <= maxZ) {
+                        result.add(entry);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns all waystones within a radius of a point.
+     * 
+     * @param x Center block X coordinate
+     * @param z Center block Z coordinate
+     * @param radius Radius in blocks
+     * @return Waystones inside the circle
+     */
+    public synchronized List<Entry> queryRadius(int x, int z, int radius) {
+        List<Entry> result = new ArrayList<>();
+        long radiusSquared = (long) radius * radius;
+
+        for (Entry entry : queryRect(x - radius, z - radius, x + radius, z + radius)) {
+            long dx = entry.x() - x;
+            long dz = entry.z() - z;
+            if (dx * dx + dz * dz <= radiusSquared) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the grid cell containing a position, for any cell size.
+     * 
+     * @param x Block X coordinate
+     * @param z Block Z coordinate
+     * @param cellSize Edge length of a grid cell in blocks
+     * @return The cell key
+     */
+    public static long cellKeyAt(int x, int z, int cellSize) {
+        return cellKey(Math.floorDiv(x, cellSize), Math.floorDiv(z, cellSize));
+    }
+
+    /**
+     * @param cellKey Key of a cell
+     * @return The cell's X index; its blocks start at this index times the cell size
+     */
+    public static int cellX(long cellKey) {
+        return (int) (cellKey >> 32);
+    }
+
+    /**
+     * @param cellKey Key of a cell
+     * @return The cell's Z index; its blocks start at this index times the cell size
+     */
+    public static int cellZ(long cellKey) {
+        return (int) cellKey;
+    }
+
+    /**
+     * Returns all waystones inside one grid cell.
+     * 
+     * @param cellKey Key of the cell, see {@link #cellKeyAt(int, int, int)}
+     * @param cellSize Edge length of the grid cell in blocks, independent of this index's cell size
+     * @return Waystones inside the cell
+     */
+    public List<Entry> queryCell(long cellKey, int cellSize) {
+        int minX = cellX(cellKey) * cellSize;
+        int minZ = cellZ(cellKey) * cellSize;
+        return queryRect(minX, minZ, minX + cellSize - 1, minZ + cellSize - 1);
+    }
+
+    /**
+     * Returns the indexed position of a waystone.
+     * 
+     * @param warpId Id of the waystone
+     * @return The entry, or null if the waystone is not indexed
+     */
+    public synchronized Entry get(UUID warpId) {
+        return entries.get(warpId);
+    }
+
+    /**
+     * @return Copy of all indexed waystones
+     */
+    public synchronized Collection<Entry> all() {
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Removes all waystones from the index.
+     */
+    public synchronized void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    /**
+     * @return Number of indexed waystones
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Edge length of a grid cell in blocks
+     */
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    private void removeFromCell(Entry entry) {
+        long key = cellKey(cell(entry.x()), cell(entry.z()));
+        List<Entry> cell = cells.get(key);
+        if (cell != null) {
+            cell.remove(entry);
+            if (cell.isEmpty()) {
+                cells.remove(key);
+            }
+        }
+    }
+
+    private int cell(int coordinate) {
+        return Math.floorDiv(coordinate, cellSize);
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xffffffffL);
+    }
+
+    /**
+     * An indexed waystone position.
+     * 
+     * @param warpId Id of the waystone
+     * @param x Block X coordinate
+     * @param z Block Z coordinate
+     */
+    public record Entry(UUID warpId, int x, int z) {
+    }
+}
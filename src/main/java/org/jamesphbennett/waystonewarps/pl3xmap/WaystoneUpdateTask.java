@@ -1,58 +1,65 @@
 package org.jamesphbennett.waystonewarps.pl3xmap;
 
-import dev.mizarc.waystonewarps.domain.warps.Warp;
-import dev.mizarc.waystonewarps.domain.warps.WarpRepository;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
-import java.util.Collection;
-
 /**
  * Periodic task for detecting and handling waystone changes.
  * 
- * Uses hash-based change detection to efficiently detect when waystones
- * are added, removed, or modified. Only triggers marker refreshes when
- * actual changes occur.
+ * Uses per-waystone digests to detect exactly which waystones were added,
+ * removed, or modified. Only the markers of those waystones are updated.
+ * A task may cover only some worlds, so worlds can be checked at their own interval.
  * 
  * Thread-safe: Runs on Bukkit's scheduler thread.
  */
 public class WaystoneUpdateTask {
     private final Plugin plugin;
-    private final Pl3xmapLayerManager layerManager;
-    private final WarpRepository warpRepository;
+    private final RefreshCoordinator refreshCoordinator;
     private final int intervalSeconds;
+    private final WorldScope scope;
 
     private BukkitTask task;
-    private int lastWarpsHash;
 
     /**
      * Creates a new update task.
      * 
      * @param plugin The plugin instance for logging and scheduling
-     * @param layerManager The layer manager to refresh when changes are detected
-     * @param warpRepository Repository containing waystone data
+     * @param refreshCoordinator The coordinator that runs the change check
+     * @param intervalSeconds Interval between checks in seconds (must be positive)
+     * @throws IllegalArgumentException if any parameter is null or interval is invalid
+     */
+    public WaystoneUpdateTask(Plugin plugin, RefreshCoordinator refreshCoordinator, int intervalSeconds) {
+        this(plugin, refreshCoordinator, intervalSeconds, WorldScope.all());
+    }
+
+    /**
+     * Creates a new update task covering some worlds.
+     * 
+     * @param plugin The plugin instance for logging and scheduling
+     * @param refreshCoordinator The coordinator that runs the change check
      * @param intervalSeconds Interval between checks in seconds (must be positive)
+     * @param scope Worlds to check
      * @throws IllegalArgumentException if any parameter is null or interval is invalid
      */
-    public WaystoneUpdateTask(Plugin plugin, Pl3xmapLayerManager layerManager, WarpRepository warpRepository, int intervalSeconds) {
+    public WaystoneUpdateTask(Plugin plugin, RefreshCoordinator refreshCoordinator, int intervalSeconds,
+                              WorldScope scope) {
         if (plugin == null) {
             throw new IllegalArgumentException("Plugin cannot be null");
         }
-        if (layerManager == null) {
-            throw new IllegalArgumentException("Layer manager cannot be null");
-        }
-        if (warpRepository == null) {
-            throw new IllegalArgumentException("Warp repository cannot be null");
+        if (refreshCoordinator == null) {
+            throw new IllegalArgumentException("Refresh coordinator cannot be null");
         }
         if (intervalSeconds <= 0) {
             throw new IllegalArgumentException("Interval must be positive");
         }
+        if (scope == null) {
+            throw new IllegalArgumentException("Scope cannot be null");
+        }
         
         this.plugin = plugin;
-        this.layerManager = layerManager;
-        this.warpRepository = warpRepository;
+        this.refreshCoordinator = refreshCoordinator;
         this.intervalSeconds = intervalSeconds;
-        this.lastWarpsHash = calculateWarpsHash();
+        this.scope = scope;
     }
 
     /**
@@ -72,7 +79,7 @@ public class WaystoneUpdateTask {
                 intervalTicks,
                 intervalTicks
         );
-        plugin.getLogger().info("Periodic waystone refresh enabled (every " + intervalSeconds + "s)");
+        plugin.getLogger().info("Periodic waystone refresh enabled for " + scope + " (every " + intervalSeconds + "s)");
     }
 
     /**
@@ -87,44 +94,13 @@ public class WaystoneUpdateTask {
     }
 
     /**
-     * Calculates a hash representing the current state of all waystones.
-     * Combines total count with each waystone's hash code for change detection.
-     * 
-     * @return Hash representing the current waystone state
-     */
-    private int calculateWarpsHash() {
-        try {
-            Collection<Warp> warps = warpRepository.getAll();
-            int hash = warps.size();
-            
-            // Combine hash codes of all individual warps
-            for (Warp warp : warps) {
-                if (warp != null) {
-                    // Use prime number for better hash distribution
-                    hash = 31 * hash + warp.hashCode();
-                }
-            }
-            
-            return hash;
-        } catch (Exception e) {
-            plugin.getLogger().warning("Error calculating waystone hash: " + e.getMessage());
-            return 0; // Return safe default
-        }
-    }
-
-    /**
-     * Checks if waystones have changed and triggers a refresh if needed.
-     * Compares current hash with previously stored hash.
+     * Checks which waystones changed and updates only their markers.
+     * Change detection itself is done by the layer manager against its last published state;
+     * the check is merged with any refresh that is already pending.
      */
     private void checkForWarpChanges() {
         try {
-            int currentHash = calculateWarpsHash();
-
-            if (currentHash != lastWarpsHash) {
-                plugin.getLogger().info("Waystone changes detected, refreshing markers...");
-                layerManager.refreshAllMarkers();
-                lastWarpsHash = currentHash;
-            }
+            refreshCoordinator.request(RefreshCoordinator.Kind.CHANGES, RefreshMetrics.Source.TIMER, scope);
         } catch (Exception e) {
             plugin.getLogger().severe("Error checking for waystone changes: " + e.getMessage());
             e.printStackTrace();
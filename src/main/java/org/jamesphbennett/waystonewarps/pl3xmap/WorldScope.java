@@ -0,0 +1,88 @@
+package org.jamesphbennett.waystonewarps.pl3xmap;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Set of worlds a change check covers, by world name.
+ * 
+ * Either lists the covered worlds or the excluded ones, so "every world except
+ * those with their own interval" keeps covering worlds that appear later.
+ * 
+ * @param worlds Names of the listed worlds
+ * @param exclude true if the listed worlds are excluded and every other world is covered
+ */
+public record WorldScope(Set<String> worlds, boolean exclude) {
+    private static final WorldScope ALL = new WorldScope(Set.of(), true);
+
+    public WorldScope {
+        worlds = Set.copyOf(worlds);
+    }
+
+    /**
+     * @return A scope covering every world
+     */
+    public static WorldScope all() {
+        return ALL;
+    }
+
+    /**
+     * @param worlds Names of the worlds to cover
+     * @return A scope covering only the given worlds
+     */
+    public static WorldScope only(Set<String> worlds) {
+        return new WorldScope(worlds, false);
+    }
+
+    /**
+     * @param worlds Names of the worlds to leave out
+     * @return A scope covering every world except the given ones
+     */
+    public static WorldScope allExcept(Set<String> worlds) {
+        return worlds.isEmpty() ? ALL : new WorldScope(worlds, true);
+    }
+
+    /**
+     * @param worldName Name of a world
+     * @return true if the world is covered
+     */
+    public boolean contains(String worldName) {
+        return worlds.contains(worldName) != exclude;
+    }
+
+    /**
+     * @return true if every world is covered
+     */
+    public boolean isAll() {
+        return exclude && worlds.isEmpty();
+    }
+
+    /**
+     * Combines two scopes, used when pending change checks are merged.
+     * 
+     * @param other The other scope
+     * @return A scope covering every world covered by either scope
+     */
+    public WorldScope union(WorldScope other) {
+        Set<String> merged = new HashSet<>(exclude ? worlds : other.worlds);
+        if (!exclude && !other.exclude) {
+            merged.addAll(other.worlds);
+            return only(merged);
+        }
+        if (exclude && other.exclude) {
+            merged.retainAll(other.worlds);
+        } else {
+            // Covered by the listed side no longer needs to be excluded by the other
+            merged.removeAll(exclude ? other.worlds : worlds);
+        }
+        return allExcept(merged);
+    }
+
+    @Override
+    public String toString() {
+        if (isAll()) {
+            return "all worlds";
+        }
+        return (exclude ? "all worlds except " : "") + String.join(", ", worlds);
+    }
+}